@@ -0,0 +1,242 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Demo;
+
+import LoadTest.LoadTestReport;
+import LoadTest.LoadTestRunner;
+import LoadTest.Scenario;
+import RepositoryAPI.RepositoryClient;
+import Shared.AllowlistHostnameVerifier;
+import Shared.HttpClientPool;
+import Shared.QlikAuthCertificate;
+import TicketAPI.TicketRequest;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.cert.CertificateFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.net.ssl.SSLContext;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Launcher.java (UTF-8)
+ * The entry point of the Uber JAR. Without arguments, it opens the {@see DemoSelector},
+ * and with a command, it runs it headless without loading AWT or Swing, for example:
+ * <pre>
+ * java -jar QlikSenseJavaExamples-Uber.jar ticket client.pfx root.cer server DOMAIN user [prefix]
+ * java -jar QlikSenseJavaExamples-Uber.jar qrs client.pfx root.cer server app "published eq true"
+ * java -jar QlikSenseJavaExamples-Uber.jar loadtest scenario.json results [baseline.json]
+ * </pre>
+ * The password of the client certificate is read from the QLIK_CERT_PASSWORD
+ * environment variable. The TLS providers and the certificate are loaded in
+ * parallel with the rest of the startup, and the warmup command exercises the
+ * same classes without a server, which the appcds profile uses to build a
+ * class data sharing archive that is passed with -XX:SharedArchiveFile. The
+ * loadtest command runs a {@see Scenario} and writes report.json and report.html
+ * to the results folder, and exits with 1 if a baseline is given and it regressed.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public class Launcher {
+
+    private static final String PASSWORD_VARIABLE = "QLIK_CERT_PASSWORD";
+    private static final double REGRESSION_TOLERANCE = 0.1;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            DemoSelector.main(args);
+            return;
+        }
+
+        System.setProperty("java.awt.headless", Boolean.TRUE.toString());
+
+        var warmers = Executors.newFixedThreadPool(Math.min(4, Runtime.getRuntime().availableProcessors()),
+                runnable -> {
+                    var thread = new Thread(runnable, "launcher-warmup");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        // Loads the TLS and key store providers while the arguments and files are read.
+        var providers = warmUpProviders(warmers);
+
+        try {
+            switch (args[0]) {
+                case "ticket":
+                    requireArguments(args, 6, "ticket <client.pfx> <root.cer> <hostname> <userDirectory> <userId> [virtualProxyPrefix]");
+                    requestTicket(args, warmers);
+                    break;
+                case "qrs":
+                    requireArguments(args, 5, "qrs <client.pfx> <root.cer> <hostname> <type> [filter]");
+                    readRepository(args, warmers);
+                    break;
+                case "loadtest":
+                    requireArguments(args, 3, "loadtest <scenario.json> <outputDir> [baseline.json]");
+                    runLoadTest(args, warmers);
+                    break;
+                case "warmup":
+                    warmUp(warmers, providers).join();
+                    break;
+                default:
+                    System.err.println("Unknown command " + args[0] + ". Use ticket, qrs, loadtest or warmup, or no arguments for the demos.");
+                    System.exit(2);
+            }
+        } finally {
+            warmers.shutdown();
+        }
+    }
+
+    private static void requestTicket(String[] args, ExecutorService warmers) throws Exception {
+        var qlikCert = loadCertificate(args, warmers);
+        var virtualProxyPrefix = args.length > 6 ? Optional.of(args[6]) : Optional.<String>empty();
+        var request = new TicketRequest(args[3], virtualProxyPrefix, qlikCert.get());
+
+        System.out.println(request.getTicketAsync(args[4], args[5]).get());
+    }
+
+    private static void readRepository(String[] args, ExecutorService warmers) throws Exception {
+        var qlikCert = loadCertificate(args, warmers);
+        var client = new RepositoryClient(args[3], qlikCert.get());
+        var filter = args.length > 5 ? args[5] : null;
+
+        client.streamFullAsync(args[4], filter, entity -> System.out.println(entity)).get();
+    }
+
+    private static void runLoadTest(String[] args, ExecutorService warmers) throws Exception {
+        var scenario = Scenario.load(Path.of(args[1]));
+        var clientCert = scenario.getClientCert().orElseThrow(() ->
+                new IllegalArgumentException("The scenario needs a certificate with clientCert and rootCert."));
+        var rootCert = scenario.getRootCert().orElseThrow(() ->
+                new IllegalArgumentException("The scenario needs a certificate with clientCert and rootCert."));
+        var qlikCert = loadCertificate(new String[] { args[0], clientCert.toString(), rootCert.toString() }, warmers);
+        var outputDirectory = Files.createDirectories(Path.of(args[2]));
+        var baseline = args.length > 3 ? Optional.of(LoadTestReport.readJson(Path.of(args[3]))) : Optional.<JSONObject>empty();
+        var report = new LoadTestRunner(scenario, qlikCert.get()).run();
+
+        report.writeJson(outputDirectory.resolve("report.json"));
+        report.writeHtml(outputDirectory.resolve("report.html"), baseline, REGRESSION_TOLERANCE);
+
+        var results = report.toJson();
+        System.out.println(results.getLong("completedFlows") + " flows completed at "
+                + results.getDouble("throughput") + "/s, " + results.getLong("failedFlows") + " failed.");
+
+        for (var flow : results.getJSONObject("flows").keySet()) {
+            var latency = results.getJSONObject("flows").getJSONObject(flow).getJSONObject("latency");
+            System.out.println(flow + ": p50 " + latency.getDouble("p50") + " ms, p99 "
+                    + latency.getDouble("p99") + " ms, max " + latency.getDouble("max") + " ms");
+        }
+
+        if (baseline.isPresent()) {
+            var regressions = report.compare(baseline.get(), REGRESSION_TOLERANCE);
+
+            if (!regressions.isEmpty()) {
+                System.err.println("Regressions: " + regressions.toString(2));
+                System.exit(1);
+            }
+        }
+
+        System.exit(0); // Ends the threads of the Engine sessions that are still closing.
+    }
+
+    /**
+     * Starts loading the certificate in the background, and builds the shared
+     * HTTP client with it once it is ready.
+     * @param args Arguments with the paths of the client and root certificates.
+     * @param warmers Threads that do the work.
+     * @return CompletableFuture with the certificate once its HTTP client is ready.
+     */
+    private static CompletableFuture<QlikAuthCertificate> loadCertificate(String[] args, ExecutorService warmers) {
+        var password = Optional.ofNullable(System.getenv(PASSWORD_VARIABLE)).orElse("").toCharArray();
+        var qlikCert = new QlikAuthCertificate(args[1], password, args[2]);
+
+        return qlikCert.prepare().thenApplyAsync(context -> {
+            try {
+                HttpClientPool.get(qlikCert, AllowlistHostnameVerifier.strict());
+                return qlikCert;
+            } catch (Exception ex) {
+                throw new IllegalStateException("Cannot load the certificate " + args[1] + ".", ex);
+            }
+        }, warmers);
+    }
+
+    /**
+     * Loads the classes of the headless commands and initializes the TLS, key
+     * store and JSON code without connecting to a server.
+     * @param warmers Threads that do the work.
+     * @param providers Warmup of the providers, which was started already.
+     * @return CompletableFuture that completes when everything is loaded.
+     */
+    private static CompletableFuture<Void> warmUp(ExecutorService warmers,
+            List<CompletableFuture<Void>> providers) {
+
+        var tasks = new ArrayList<>(providers);
+
+        tasks.add(CompletableFuture.runAsync(() -> {
+            HttpClient.newBuilder().build();
+            new JSONObject(new JSONTokener("{\"qText\":\"a\",\"qNum\":1.5,\"qElemNumber\":[0]}")).toString();
+
+            for (var name : List.of("TicketAPI.TicketRequest", "TicketAPI.HedgedTicketRequest",
+                    "TicketAPI.TicketRateLimiter", "RepositoryAPI.RepositoryClient",
+                    "RepositoryAPI.RepositoryCache", "Shared.QlikAuthCertificate", "Shared.HttpClientPool")) {
+                try {
+                    Class.forName(name);
+                } catch (ClassNotFoundException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+        }, warmers));
+
+        return CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0]));
+    }
+
+    private static List<CompletableFuture<Void>> warmUpProviders(ExecutorService warmers) {
+        return List.of(
+            CompletableFuture.runAsync(() -> {
+                try {
+                    SSLContext.getInstance(QlikAuthCertificate.PROTOCOL).init(null, null, new SecureRandom());
+                } catch (Exception ex) {
+                    // Only a warmup, so the real use reports the error.
+                }
+            }, warmers),
+            CompletableFuture.runAsync(() -> {
+                try {
+                    KeyStore.getInstance("PKCS12").load(null, null);
+                    CertificateFactory.getInstance("X.509");
+                } catch (Exception ex) {
+                    // Only a warmup, so the real use reports the error.
+                }
+            }, warmers));
+    }
+
+    private static void requireArguments(String[] args, int count, String usage) {
+        if (args.length < count) {
+            System.err.println("Usage: " + usage);
+            System.exit(2);
+        }
+    }
+}
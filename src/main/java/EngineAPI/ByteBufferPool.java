@@ -0,0 +1,140 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package EngineAPI;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ByteBufferPool.java (UTF-8)
+ * A simple pool of heap buffers in power of two sizes that is used to reassemble
+ * fragmented messages without allocating new buffers for every message.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public class ByteBufferPool {
+
+    private static final int MIN_SIZE_SHIFT = 12; // 4 KiB
+    private static final int MAX_SIZE_SHIFT = 26; // 64 MiB, larger buffers are not pooled.
+    private final List<Queue<ByteBuffer>> _buckets;
+    private final AtomicInteger[] _bucketSizes;
+    private final int _maxBuffersPerSize;
+
+    /**
+     * Constructions a new {@see ByteBufferPool} instance.
+     * @param maxBuffersPerSize Maximum number of idle buffers kept for each size.
+     */
+    public ByteBufferPool(int maxBuffersPerSize) {
+        int count = MAX_SIZE_SHIFT - MIN_SIZE_SHIFT + 1;
+
+        _buckets = new ArrayList<>(count);
+        _bucketSizes = new AtomicInteger[count];
+        _maxBuffersPerSize = maxBuffersPerSize;
+
+        for (int i = 0; i < count; i++) {
+            _buckets.add(new ConcurrentLinkedQueue<>());
+            _bucketSizes[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * Gets a cleared buffer that can hold at least the requested number of bytes.
+     * @param minCapacity Minimum capacity needed.
+     * @return Buffer ready for writing.
+     */
+    public ByteBuffer acquire(int minCapacity) {
+        int bucket = getBucket(minCapacity);
+
+        if (bucket < 0) {
+            return ByteBuffer.allocate(minCapacity);
+        }
+
+        var buffer = _buckets.get(bucket).poll();
+
+        if (buffer == null) {
+            return ByteBuffer.allocate(1 << (bucket + MIN_SIZE_SHIFT));
+        }
+
+        _bucketSizes[bucket].decrementAndGet();
+        return buffer.clear();
+    }
+
+    /**
+     * Gets a buffer with at least the requested additional space that contains
+     * the written bytes of the given buffer, which is released to the pool.
+     * @param buffer Buffer in write mode that is too small.
+     * @param additional Number of bytes that still need to fit.
+     * @return Buffer in write mode with the same content.
+     */
+    public ByteBuffer grow(ByteBuffer buffer, int additional) {
+        long needed = (long) buffer.position() + additional;
+
+        if (needed > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Buffer cannot grow beyond 2 GiB.");
+        }
+
+        var larger = acquire((int) Math.max(needed, buffer.capacity() * 2L));
+
+        larger.put(buffer.flip());
+        release(buffer);
+
+        return larger;
+    }
+
+    /**
+     * Returns a buffer to the pool so it can be reused.
+     * @param buffer Buffer that was acquired from this pool.
+     */
+    public void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+
+        // Only buffers with an exact power of two size came from this pool.
+        if (Integer.bitCount(capacity) != 1) {
+            return;
+        }
+
+        int bucket = Integer.numberOfTrailingZeros(capacity) - MIN_SIZE_SHIFT;
+
+        if (bucket < 0 || bucket >= _buckets.size() || buffer.isDirect() || buffer.isReadOnly()) {
+            return;
+        }
+
+        if (_bucketSizes[bucket].incrementAndGet() <= _maxBuffersPerSize) {
+            _buckets.get(bucket).offer(buffer);
+        } else {
+            _bucketSizes[bucket].decrementAndGet();
+        }
+    }
+
+    /**
+     * Gets the index of the smallest bucket that fits the capacity.
+     * @param capacity Capacity needed.
+     * @return Index of the bucket, or -1 if the capacity is too large to pool.
+     */
+    private int getBucket(int capacity) {
+        int shift = Math.max(MIN_SIZE_SHIFT, 32 - Integer.numberOfLeadingZeros(Math.max(capacity, 1) - 1));
+
+        return shift > MAX_SIZE_SHIFT ? -1 : shift - MIN_SIZE_SHIFT;
+    }
+}
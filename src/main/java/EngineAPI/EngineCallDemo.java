@@ -22,9 +22,11 @@ import Shared.Interfaces.ChannelListener;
 import Shared.QlikAuthCertificate;
 import java.io.File;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.Arrays;
 import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -42,6 +44,7 @@ public class EngineCallDemo extends javax.swing.JFrame implements ChannelListene
 
     private static final String DEFAULT_CERT_DIRECTORY = Paths.get(System.getenv("programdata"), 
                 "Qlik", "Sense", "Repository", "Exported Certificates").toString();
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(30);
     private QlikWebSocketClient _qlikClient;
     
     /**
@@ -321,23 +324,33 @@ public class EngineCallDemo extends javax.swing.JFrame implements ChannelListene
         try {
             _qlikClient = new QlikWebSocketClient(txtAddress.getText(), cert);
             _qlikClient.addListener(this);
-            // Initiates the websocket connection just like connect(), but blocks
-            // until the websocket has connected or failed.
-            _qlikClient.connectBlocking();
+            btnConnect.setEnabled(false);
+            // Initiates the websocket connection just like connect(), but gives
+            // up after a timeout without blocking the UI while it connects.
+            _qlikClient.connectAsync(CONNECT_TIMEOUT).whenComplete((session, ex) -> 
+                    SwingUtilities.invokeLater(() -> onConnectCompleted(ex == null)));
         } catch (Exception ex) {
             txtOutput.setText("Connection could not be established.");
         }
         
-        if (_qlikClient.isOpen()) {
-            btnConnect.setEnabled(false);
-            btnSend.setEnabled(true);
-            btnDisconnect.setEnabled(true);
-        }
-        
         // Zeros out the password while avoiding the Java String Pool for security.
         Arrays.fill(clientPass, '0');
     }//GEN-LAST:event_btnConnectActionPerformed
 
+    /**
+     * Updates the buttons once a connection attempt has finished.
+     * @param isOpen Set true if the connection was opened, and false if not.
+     */
+    private void onConnectCompleted(boolean isOpen) {
+        if (!isOpen) {
+            txtOutput.setText("Connection could not be established.");
+        }
+        
+        btnConnect.setEnabled(!isOpen);
+        btnSend.setEnabled(isOpen);
+        btnDisconnect.setEnabled(isOpen);
+    }
+    
     private void btnDisconnectActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnDisconnectActionPerformed
         try {
             _qlikClient.closeBlocking();
@@ -0,0 +1,154 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package EngineAPI;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import org.java_websocket.WebSocketImpl;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.enums.Opcode;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.exceptions.InvalidFrameException;
+import org.java_websocket.exceptions.LimitExceededException;
+import org.java_websocket.extensions.DefaultExtension;
+import org.java_websocket.extensions.IExtension;
+import org.java_websocket.framing.Framedata;
+
+/**
+ * EngineDraft.java (UTF-8)
+ * A WebSocket draft that hands the UTF-8 payload of text messages to the
+ * {@see QlikWebSocketClient} as bytes instead of decoding them into a String
+ * first. Fragments are either streamed to the client as they arrive or
+ * reassembled into pooled buffers up to the maximum message size. Control 
+ * frames and everything else are processed as usual by {@see Draft_6455}.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+class EngineDraft extends Draft_6455 {
+
+    // Shared with copies because the connection works with a copy made before the client is attached.
+    private final AtomicReference<QlikWebSocketClient> _client;
+    private final int _maxMessageSize;
+    private ByteBuffer _fragments; // Pooled buffer of the text message being reassembled.
+    private boolean _streaming; // True while the fragments of a message are being streamed.
+
+    /**
+     * Constructions a new {@see EngineDraft} instance.
+     * @param maxMessageSize Maximum size in bytes of a frame or a reassembled message.
+     */
+    EngineDraft(int maxMessageSize) {
+        this(new AtomicReference<>(), maxMessageSize);
+    }
+
+    private EngineDraft(AtomicReference<QlikWebSocketClient> client, int maxMessageSize) {
+        super(List.<IExtension>of(new DefaultExtension()), maxMessageSize);
+        _client = client;
+        _maxMessageSize = maxMessageSize;
+    }
+
+    void attach(QlikWebSocketClient client) {
+        _client.set(client);
+    }
+
+    @Override
+    public void processFrame(WebSocketImpl webSocketImpl, Framedata frame) throws InvalidDataException {
+        var client = _client.get();
+        var opcode = frame.getOpcode();
+        boolean inProgress = _fragments != null || _streaming;
+        boolean isText = opcode == Opcode.TEXT || (opcode == Opcode.CONTINUOUS && inProgress);
+
+        if (client != null && client.isTracing() && (opcode == Opcode.TEXT || opcode == Opcode.CONTINUOUS)) {
+            client.onTextFrame(opcode == Opcode.TEXT, frame.isFin());
+        }
+
+        if (client == null || !isText || (!inProgress && !client.isBytePathEnabled())) {
+            super.processFrame(webSocketImpl, frame);
+            return;
+        }
+
+        if (opcode == Opcode.TEXT && inProgress) {
+            throw new InvalidFrameException("Previous continuous frame sequence not completed.");
+        }
+
+        var payload = frame.getPayloadData();
+        
+        if (_streaming || (_fragments == null && !frame.isFin() && client.isStreamingEnabled(payload))) {
+            client.onUtf8Fragment(payload, !_streaming, frame.isFin());
+            _streaming = !frame.isFin();
+            return;
+        }
+
+        if (frame.isFin() && _fragments == null) {
+            client.onUtf8Message(payload); // Single frame, so no copy is needed.
+            return;
+        }
+
+        if (_fragments == null) {
+            _fragments = client.getBufferPool().acquire((int) Math.min(payload.remaining() * 2L, _maxMessageSize));
+        }
+
+        if ((long) _fragments.position() + payload.remaining() > _maxMessageSize) {
+            client.getBufferPool().release(_fragments);
+            _fragments = null;
+            throw new LimitExceededException("Message exceeds the maximum size of " 
+                    + _maxMessageSize + " bytes.", _maxMessageSize);
+        }
+
+        if (_fragments.remaining() < payload.remaining()) {
+            _fragments = client.getBufferPool().grow(_fragments, payload.remaining());
+        }
+
+        _fragments.put(payload);
+
+        if (frame.isFin()) {
+            var message = _fragments.flip();
+            _fragments = null;
+
+            try {
+                client.onUtf8Message(message);
+            } finally {
+                client.getBufferPool().release(message);
+            }
+        }
+    }
+
+    /**
+     * Returns the buffer of an incomplete message to the pool, for example,
+     * when the connection closes in the middle of it.
+     */
+    @Override
+    public void reset() {
+        super.reset();
+
+        if (_fragments != null && _client.get() != null) {
+            _client.get().getBufferPool().release(_fragments);
+        }
+
+        _fragments = null;
+        _streaming = false;
+    }
+
+    @Override
+    public Draft copyInstance() {
+        return new EngineDraft(_client, _maxMessageSize);
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package EngineAPI;
+
+import org.json.JSONObject;
+
+/**
+ * EngineException.java (UTF-8)
+ * Represents an error object returned by the Qlik Engine in reply to a JSON-RPC request.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public class EngineException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+    private final int _code;
+    private final String _parameter;
+
+    /**
+     * Constructions a new {@see EngineException} instance from a JSON-RPC error object.
+     * @param method Name of the method that was called.
+     * @param error Error object as returned by the Engine, for example,
+     * {"code": -32602, "parameter": "Invalid handle", "message": "Invalid Params"}
+     */
+    public EngineException(String method, JSONObject error) {
+        super(String.format("%1$s failed with code %2$d: %3$s %4$s", method,
+                error.optInt("code"), error.optString("message"), error.optString("parameter")).trim());
+
+        _code = error.optInt("code");
+        _parameter = error.optString("parameter");
+    }
+
+    public int getCode() {
+        return _code;
+    }
+
+    public String getParameter() {
+        return _parameter;
+    }
+}
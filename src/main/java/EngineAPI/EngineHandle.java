@@ -0,0 +1,142 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package EngineAPI;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * EngineHandle.java (UTF-8)
+ * A reference-counted wrapper for a handle returned by the Qlik Engine. Every
+ * {@link #retain() retain} must be matched by a {@link #close() close}, and when
+ * the last reference is closed, the handle is released from its {@see HandleRegistry}.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public class EngineHandle implements AutoCloseable {
+
+    private final HandleRegistry _registry;
+    private final int _handle;
+    private final String _type;
+    private final String _genericId;
+    private final int _docHandle;
+    private final boolean _sessionObject;
+    private final AtomicInteger _references = new AtomicInteger(1);
+
+    /**
+     * Constructions a new {@see EngineHandle} instance with one reference.
+     * @param registry Registry that tracks the handle.
+     * @param handle Handle returned by the Engine in qReturn.
+     * @param type Type of the object, for example, Doc or GenericObject.
+     * @param genericId Id of the object if it has one.
+     * @param docHandle Handle of the document that owns the object, or -1 if none.
+     * @param sessionObject Set true if the object was created with CreateSessionObject.
+     */
+    EngineHandle(HandleRegistry registry, int handle, String type, String genericId,
+            int docHandle, boolean sessionObject) {
+
+        _registry = registry;
+        _handle = handle;
+        _type = type;
+        _genericId = genericId;
+        _docHandle = docHandle;
+        _sessionObject = sessionObject;
+    }
+
+    public int getHandle() {
+        return _handle;
+    }
+
+    public String getType() {
+        return _type;
+    }
+
+    public String getGenericId() {
+        return _genericId;
+    }
+
+    public int getDocHandle() {
+        return _docHandle;
+    }
+
+    public boolean isSessionObject() {
+        return _sessionObject;
+    }
+
+    HandleRegistry getRegistry() {
+        return _registry;
+    }
+
+    public int getReferenceCount() {
+        return _references.get();
+    }
+
+    /**
+     * Adds a reference to the handle so it stays alive until that reference is closed.
+     * @return This handle for chaining.
+     * @throws IllegalStateException If the handle was released already.
+     */
+    public EngineHandle retain() {
+        if (!tryRetain()) {
+            throw new IllegalStateException("Handle " + _handle + " was released already.");
+        }
+
+        return this;
+    }
+
+    /**
+     * Adds a reference to the handle unless its last reference was closed already,
+     * which can happen at any moment on another thread.
+     * @return True if the reference was added, or false if the handle was released.
+     */
+    boolean tryRetain() {
+        int count;
+
+        do {
+            count = _references.get();
+
+            if (count <= 0) {
+                return false;
+            }
+        } while (!_references.compareAndSet(count, count + 1));
+
+        return true;
+    }
+
+    /**
+     * Removes a reference to the handle, and releases it when no references are left.
+     * Closing a released handle has no effect.
+     */
+    @Override
+    public void close() {
+        int previous = _references.getAndUpdate(current -> current > 0 ? current - 1 : 0);
+
+        if (previous == 1) {
+            _registry.release(this);
+        }
+    }
+
+    /**
+     * Marks the handle as released without destroying anything on the Engine,
+     * for example, when the Engine closed the handle itself.
+     */
+    void invalidate() {
+        _references.set(0);
+    }
+}
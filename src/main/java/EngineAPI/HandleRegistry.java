@@ -0,0 +1,135 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package EngineAPI;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * HandleRegistry.java (UTF-8)
+ * Tracks the handles that are open on the Engine for one {@see QlikWebSocketClient}
+ * session. Session objects are destroyed on the Engine when their last reference
+ * is closed, so long-lived sockets don't slowly accumulate objects. Other handles
+ * like those of OpenDoc or GetObject have no release call in the Engine API, so
+ * they are only untracked and live until the Engine closes them or the session ends.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public class HandleRegistry {
+
+    private final QlikWebSocketClient _client;
+    private final Map<Integer, EngineHandle> _handles = new ConcurrentHashMap<>();
+
+    /**
+     * Constructions a new {@see HandleRegistry} instance for a client session.
+     * @param client Client whose handles are tracked.
+     */
+    HandleRegistry(QlikWebSocketClient client) {
+        _client = client;
+    }
+
+    QlikWebSocketClient getClient() {
+        return _client;
+    }
+
+    /**
+     * Registers the handle returned by a call, or adds a reference to it if the
+     * Engine returned a handle that is tracked already.
+     * @param result Result object of a call that returns qReturn.
+     * @param docHandle Handle of the document that owns the object, or -1 if none.
+     * @param sessionObject Set true if the call was CreateSessionObject.
+     * @return Handle with a reference owned by the caller.
+     */
+    EngineHandle register(JSONObject result, int docHandle, boolean sessionObject) {
+        var qReturn = result.getJSONObject("qReturn");
+        int handle = qReturn.getInt("qHandle");
+
+        return _handles.compute(handle, (key, existing) -> {
+            if (existing != null && existing.tryRetain()) {
+                return existing;
+            }
+            return new EngineHandle(this, handle, qReturn.optString("qType"),
+                    qReturn.optString("qGenericId", null), docHandle, sessionObject);
+        });
+    }
+
+    /**
+     * Untracks a handle whose last reference was closed, and destroys it on
+     * the Engine if it is a session object.
+     * @param engineHandle Handle to release.
+     */
+    void release(EngineHandle engineHandle) {
+        if (!_handles.remove(engineHandle.getHandle(), engineHandle)) {
+            return;
+        }
+
+        if (engineHandle.isSessionObject() && _client.isOpen()) {
+            _client.call("DestroySessionObject", engineHandle.getDocHandle(),
+                    new JSONArray().put(engineHandle.getGenericId()));
+        }
+    }
+
+    /**
+     * Untracks the handles that the Engine listed as closed in a response.
+     * @param closedHandles Handles from the close property of a response.
+     */
+    void onHandlesClosed(JSONArray closedHandles) {
+        for (int i = 0; i < closedHandles.length(); i++) {
+            var engineHandle = _handles.remove(closedHandles.optInt(i));
+
+            if (engineHandle != null) {
+                engineHandle.invalidate();
+            }
+        }
+    }
+
+    /**
+     * Untracks all handles, for example, after the session has ended.
+     */
+    void clear() {
+        _handles.values().forEach(EngineHandle::invalidate);
+        _handles.clear();
+    }
+
+    /**
+     * Gets the number of handles that are open on the Engine for this session.
+     * @return Number of tracked handles.
+     */
+    public int getOpenCount() {
+        return _handles.size();
+    }
+
+    /**
+     * Gets the number of open handles per object type for this session, which
+     * is useful to confirm that long-running jobs stay flat on the server.
+     * @return Object counts by type, for example, {Doc=1, GenericObject=12}.
+     */
+    public Map<String, Integer> getOpenCountsByType() {
+        var counts = new TreeMap<String, Integer>();
+
+        _handles.values().forEach(engineHandle ->
+                counts.merge(engineHandle.getType(), 1, Integer::sum));
+
+        return counts;
+    }
+}
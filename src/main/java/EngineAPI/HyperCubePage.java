@@ -0,0 +1,135 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package EngineAPI;
+
+/**
+ * HyperCubePage.java (UTF-8)
+ * A page of hypercube cells stored in parallel primitive arrays in row-major
+ * order instead of a {@see org.json.JSONArray} of {@see org.json.JSONObject}
+ * cells. A cell takes 17 bytes plus its share of the texts, which are stored
+ * once per page and referenced by index, compared to about 200 bytes as JSON.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public class HyperCubePage {
+
+    // The values of qState in the order of their codes.
+    private static final String[] STATES = {"L", "S", "O", "D", "A", "X", "XS", "XL"};
+    static final byte NO_STATE = -1;
+    static final int NO_TEXT = -1;
+    private final int _top;
+    private final int _left;
+    private final int _width;
+    private final int _height;
+    private final double[] _numbers;
+    private final int[] _textIndexes;
+    private final int[] _elemNumbers;
+    private final byte[] _states;
+    private final String[] _texts;
+
+    HyperCubePage(int top, int left, int width, int height, double[] numbers, int[] textIndexes,
+            int[] elemNumbers, byte[] states, String[] texts) {
+
+        _top = top;
+        _left = left;
+        _width = width;
+        _height = height;
+        _numbers = numbers;
+        _textIndexes = textIndexes;
+        _elemNumbers = elemNumbers;
+        _states = states;
+        _texts = texts;
+    }
+
+    static String[] getStates() {
+        return STATES.clone();
+    }
+
+    public int getTop() {
+        return _top;
+    }
+
+    public int getLeft() {
+        return _left;
+    }
+
+    public int getWidth() {
+        return _width;
+    }
+
+    public int getHeight() {
+        return _height;
+    }
+
+    /**
+     * Gets the qNum of a cell.
+     * @param row Row within the page.
+     * @param column Column within the page.
+     * @return Number of the cell, or NaN if it has none.
+     */
+    public double getNumber(int row, int column) {
+        return _numbers[index(row, column)];
+    }
+
+    /**
+     * Gets the qText of a cell.
+     * @param row Row within the page.
+     * @param column Column within the page.
+     * @return Text of the cell, or null if it has none.
+     */
+    public String getText(int row, int column) {
+        int text = _textIndexes[index(row, column)];
+
+        return text == NO_TEXT ? null : _texts[text];
+    }
+
+    public int getElemNumber(int row, int column) {
+        return _elemNumbers[index(row, column)];
+    }
+
+    /**
+     * Gets the qState of a cell, for example, "S" for selected or "X" for excluded.
+     * @param row Row within the page.
+     * @param column Column within the page.
+     * @return State of the cell, or null if it has none.
+     */
+    public String getState(int row, int column) {
+        byte state = _states[index(row, column)];
+
+        return state == NO_STATE ? null : STATES[state];
+    }
+
+    /**
+     * Gets the number of distinct texts in the page.
+     * @return Number of texts.
+     */
+    public int getTextCount() {
+        return _texts.length;
+    }
+
+    private int index(int row, int column) {
+        if (row < 0 || row >= _height || column < 0 || column >= _width) {
+            throw new IndexOutOfBoundsException("Cell " + row + ", " + column + " is outside of "
+                    + _height + " rows and " + _width + " columns.");
+        }
+
+        return row * _width + column;
+    }
+}
@@ -0,0 +1,275 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package EngineAPI;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import org.json.JSONObject;
+
+/**
+ * PriorityLanes.java (UTF-8)
+ * Schedules the calls of a {@see QlikWebSocketClient} so interactive calls do
+ * not wait behind a sweep of bulk calls. Only a limited number of calls are sent
+ * to the Engine at a time, and bulk calls may use all but one of them, so an
+ * interactive call only ever waits for the responses already on the wire. The
+ * other calls wait in a bounded queue per priority, and when both queues have
+ * calls, a bulk call is sent after every few interactive ones, so bulk traffic
+ * keeps moving while users are busy. A call that is cancelled while it waits
+ * leaves its queue right away.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public class PriorityLanes {
+
+    private final int _maxInFlight;
+    private final int _maxBulkInFlight;
+    private final int _interactiveWeight;
+    private final int _maxQueued;
+    private final ArrayDeque<Entry> _interactive = new ArrayDeque<>();
+    private final ArrayDeque<Entry> _bulk = new ArrayDeque<>();
+    private int _inFlight;
+    private int _bulkInFlight;
+    private int _credits;
+    private boolean _draining;
+    private final LongAdder _sentInteractive = new LongAdder();
+    private final LongAdder _sentBulk = new LongAdder();
+    private final LongAdder _queued = new LongAdder();
+    private final LongAdder _rejected = new LongAdder();
+
+    /**
+     * Constructions a new {@see PriorityLanes} instance.
+     * @param maxInFlight Number of calls sent to the Engine at a time, which must
+     * be at least two so one is always left for interactive calls.
+     * @param interactiveWeight Number of interactive calls sent before a waiting bulk call.
+     * @param maxQueued Number of calls each priority can have waiting.
+     * @throws IllegalArgumentException If maxInFlight is less than two.
+     */
+    PriorityLanes(int maxInFlight, int interactiveWeight, int maxQueued) {
+        if (maxInFlight < 2) {
+            throw new IllegalArgumentException("At least two calls in flight are needed.");
+        }
+
+        _maxInFlight = maxInFlight;
+        _maxBulkInFlight = maxInFlight - 1;
+        _interactiveWeight = Math.max(1, interactiveWeight);
+        _maxQueued = Math.max(1, maxQueued);
+        _credits = _interactiveWeight;
+    }
+
+    /**
+     * Sends a call as soon as its lane allows, or fails it with a
+     * {@see RejectedExecutionException} if its queue is full.
+     * @param priority Priority of the call.
+     * @param future Future of the call, which frees its slot once completed.
+     * @param transmit Sends the call, and completes the future if that fails.
+     */
+    void submit(RpcPriority priority, CompletableFuture<?> future, Runnable transmit) {
+        var entry = new Entry(priority, future, transmit);
+
+        synchronized (this) {
+            var lane = getLane(priority);
+
+            if (lane.size() >= _maxQueued) {
+                _rejected.increment();
+                future.completeExceptionally(new RejectedExecutionException(
+                        "The " + priority.name().toLowerCase(Locale.ROOT) + " queue is full."));
+                return;
+            }
+
+            if (_inFlight >= _maxInFlight || !lane.isEmpty()) {
+                _queued.increment();
+            }
+
+            lane.add(entry);
+        }
+
+        future.whenComplete((result, ex) -> remove(entry));
+        drain();
+    }
+
+    /**
+     * Takes a call out of its queue once it completed before it was sent, for
+     * example, when it was cancelled, so it no longer counts against the queue.
+     */
+    private synchronized void remove(Entry entry) {
+        if (!entry.isSent) {
+            getLane(entry.priority).remove(entry);
+        }
+    }
+
+    private ArrayDeque<Entry> getLane(RpcPriority priority) {
+        return priority == RpcPriority.BULK ? _bulk : _interactive;
+    }
+
+    /**
+     * Sends the next calls while there are free slots. Only one thread sends at
+     * a time, and the others leave their calls to it, which also keeps a run of
+     * calls failing on a closed socket from nesting.
+     */
+    private void drain() {
+        synchronized (this) {
+            if (_draining) {
+                return;
+            }
+
+            _draining = true;
+        }
+
+        try {
+            while (true) {
+                Entry next;
+
+                synchronized (this) {
+                    next = poll();
+
+                    if (next == null) {
+                        _draining = false;
+                        return;
+                    }
+                }
+
+                var priority = next.priority;
+
+                next.future.whenComplete((result, ex) -> release(priority));
+                next.transmit.run();
+            }
+        } catch (RuntimeException ex) {
+            synchronized (this) {
+                _draining = false;
+            }
+
+            throw ex;
+        }
+    }
+
+    /**
+     * Takes the next call to send, which is interactive unless a bulk call has
+     * waited for its turn, or null if there is no free slot or call.
+     */
+    private Entry poll() {
+        while (_inFlight < _maxInFlight) {
+            boolean canSendBulk = !_bulk.isEmpty() && _bulkInFlight < _maxBulkInFlight;
+            Entry next;
+
+            if (!_interactive.isEmpty() && (_credits > 0 || !canSendBulk)) {
+                next = _interactive.poll();
+                _credits = Math.max(0, _credits - 1);
+            } else if (canSendBulk) {
+                next = _bulk.poll();
+                _credits = _interactiveWeight;
+            } else {
+                return null;
+            }
+
+            if (next.future.isDone()) {
+                continue; // Cancelled while it was queued.
+            }
+
+            _inFlight++;
+            next.isSent = true;
+
+            if (next.priority == RpcPriority.BULK) {
+                _bulkInFlight++;
+                _sentBulk.increment();
+            } else {
+                _sentInteractive.increment();
+            }
+
+            return next;
+        }
+
+        return null;
+    }
+
+    private void release(RpcPriority priority) {
+        synchronized (this) {
+            _inFlight--;
+
+            if (priority == RpcPriority.BULK) {
+                _bulkInFlight--;
+            }
+        }
+
+        drain();
+    }
+
+    /**
+     * Fails every queued call, for example, when the connection closed.
+     * @param ex Error of the calls.
+     */
+    void failQueued(Exception ex) {
+        var failed = new ArrayList<Entry>();
+
+        synchronized (this) {
+            failed.addAll(_interactive);
+            failed.addAll(_bulk);
+            _interactive.clear();
+            _bulk.clear();
+        }
+
+        failed.forEach(entry -> entry.future.completeExceptionally(ex));
+    }
+
+    /**
+     * Gets the number of calls waiting in the queues.
+     * @return Number of queued calls.
+     */
+    public synchronized int getQueuedCount() {
+        return _interactive.size() + _bulk.size();
+    }
+
+    /**
+     * Gets the calls sent per priority, the calls that had to wait, the calls
+     * rejected because their queue was full, and the current state of the lanes.
+     * @return Metrics of the lanes as JSON.
+     */
+    public synchronized JSONObject getStats() {
+        return new JSONObject()
+                .put("sentInteractive", _sentInteractive.sum())
+                .put("sentBulk", _sentBulk.sum())
+                .put("queued", _queued.sum())
+                .put("rejected", _rejected.sum())
+                .put("inFlight", _inFlight)
+                .put("bulkInFlight", _bulkInFlight)
+                .put("interactiveWaiting", _interactive.size())
+                .put("bulkWaiting", _bulk.size());
+    }
+
+    /**
+     * A call waiting for its turn.
+     */
+    private static class Entry {
+
+        private final RpcPriority priority;
+        private final CompletableFuture<?> future;
+        private final Runnable transmit;
+        private boolean isSent; // Guarded by the lanes.
+
+        Entry(RpcPriority priority, CompletableFuture<?> future, Runnable transmit) {
+            this.priority = priority;
+            this.future = future;
+            this.transmit = transmit;
+        }
+    }
+}
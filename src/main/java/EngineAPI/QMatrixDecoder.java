@@ -0,0 +1,243 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package EngineAPI;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * QMatrixDecoder.java (UTF-8)
+ * Decodes the qDataPages of a GetHyperCubeData result straight from the UTF-8
+ * bytes into {@see HyperCubePage} instances, without creating a JSON object for
+ * each cell. Repeated texts, which are common for dimensions, are stored once
+ * per page, and are only decoded once across pages when a {@see TextInternCache}
+ * is given for their column.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+class QMatrixDecoder {
+
+    private static final byte[][] PAGE_NAMES = toUtf8("qMatrix", "qArea");
+    private static final byte[][] AREA_NAMES = toUtf8("qTop", "qLeft", "qWidth", "qHeight");
+    private static final byte[][] CELL_NAMES = toUtf8("qText", "qNum", "qElemNumber", "qState");
+    private static final byte[][] STATES = toUtf8(HyperCubePage.getStates());
+    private static final int INITIAL_CELLS = 1024;
+
+    private QMatrixDecoder() {
+    }
+
+    /**
+     * Decodes the pages of a result.
+     * @param reader Reader positioned at the result object.
+     * @param textCaches Gets the text cache of a column relative to the left of
+     * the page, which can return null to decode its texts without a cache.
+     * @return Pages of the result.
+     */
+    static List<HyperCubePage> decodeDataPages(Utf8JsonReader reader, IntFunction<TextInternCache> textCaches) {
+        var pages = new ArrayList<HyperCubePage>(1);
+
+        reader.beginObject();
+
+        while (reader.hasNext()) {
+            if (!reader.nextName().equals("qDataPages")) {
+                reader.skipValue();
+                continue;
+            }
+
+            reader.beginArray();
+
+            while (reader.hasNext()) {
+                pages.add(decodePage(reader, textCaches));
+            }
+        }
+
+        return pages;
+    }
+
+    private static HyperCubePage decodePage(Utf8JsonReader reader, IntFunction<TextInternCache> textCaches) {
+        var area = new int[4];
+        var cells = new CellBuilder(textCaches);
+
+        reader.beginObject();
+
+        while (reader.hasNext()) {
+            switch (reader.nextName(PAGE_NAMES)) {
+                case 0:
+                    decodeMatrix(reader, cells);
+                    break;
+                case 1:
+                    reader.beginObject();
+
+                    while (reader.hasNext()) {
+                        int name = reader.nextName(AREA_NAMES);
+
+                        if (name < 0) {
+                            reader.skipValue();
+                        } else {
+                            area[name] = reader.nextInt();
+                        }
+                    }
+
+                    break;
+                default:
+                    reader.skipValue(); // For example, qTails.
+            }
+        }
+
+        return cells.build(area[0], area[1], cells.rows > 0 ? cells.width : area[2]);
+    }
+
+    private static void decodeMatrix(Utf8JsonReader reader, CellBuilder cells) {
+        reader.beginArray();
+
+        while (reader.hasNext()) {
+            int columns = 0;
+
+            reader.beginArray();
+
+            while (reader.hasNext()) {
+                decodeCell(reader, cells, cells.getTextCache(columns));
+                columns++;
+            }
+
+            if (cells.rows == 0) {
+                cells.width = columns;
+            } else if (columns != cells.width) {
+                throw new IllegalStateException("Row " + cells.rows + " has " + columns
+                        + " cells instead of " + cells.width + ".");
+            }
+
+            cells.rows++;
+        }
+    }
+
+    private static void decodeCell(Utf8JsonReader reader, CellBuilder cells, TextInternCache textCache) {
+        int text = HyperCubePage.NO_TEXT;
+        double number = Double.NaN;
+        int elemNumber = -1;
+        byte state = HyperCubePage.NO_STATE;
+
+        reader.beginObject();
+
+        while (reader.hasNext()) {
+            switch (reader.nextName(CELL_NAMES)) {
+                case 0:
+                    text = cells.intern(textCache == null ? reader.nextString() : reader.nextString(textCache));
+                    break;
+                case 1:
+                    number = reader.nextDouble();
+                    break;
+                case 2:
+                    elemNumber = reader.nextInt();
+                    break;
+                case 3:
+                    state = (byte) reader.nextString(STATES);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+
+        cells.add(number, text, elemNumber, state);
+    }
+
+    private static byte[][] toUtf8(String... values) {
+        var bytes = new byte[values.length][];
+
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = values[i].getBytes(StandardCharsets.UTF_8);
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Collects the cells of a page in arrays that grow as needed.
+     */
+    private static class CellBuilder {
+
+        private double[] numbers = new double[INITIAL_CELLS];
+        private int[] textIndexes = new int[INITIAL_CELLS];
+        private int[] elemNumbers = new int[INITIAL_CELLS];
+        private byte[] states = new byte[INITIAL_CELLS];
+        private final Map<String, Integer> textIndex = new HashMap<>();
+        private final List<String> texts = new ArrayList<>();
+        private final IntFunction<TextInternCache> textCaches;
+        private TextInternCache[] columnCaches = new TextInternCache[0];
+        private int count;
+        private int rows;
+        private int width;
+
+        CellBuilder(IntFunction<TextInternCache> textCaches) {
+            this.textCaches = textCaches;
+        }
+
+        TextInternCache getTextCache(int column) {
+            if (textCaches == null) {
+                return null;
+            }
+
+            if (column >= columnCaches.length) {
+                columnCaches = Arrays.copyOf(columnCaches, column + 1);
+            }
+
+            if (columnCaches[column] == null) {
+                columnCaches[column] = textCaches.apply(column);
+            }
+
+            return columnCaches[column];
+        }
+
+        int intern(String text) {
+            return textIndex.computeIfAbsent(text, key -> {
+                texts.add(key);
+                return texts.size() - 1;
+            });
+        }
+
+        void add(double number, int text, int elemNumber, byte state) {
+            if (count == numbers.length) {
+                int capacity = count * 2;
+
+                numbers = Arrays.copyOf(numbers, capacity);
+                textIndexes = Arrays.copyOf(textIndexes, capacity);
+                elemNumbers = Arrays.copyOf(elemNumbers, capacity);
+                states = Arrays.copyOf(states, capacity);
+            }
+
+            numbers[count] = number;
+            textIndexes[count] = text;
+            elemNumbers[count] = elemNumber;
+            states[count] = state;
+            count++;
+        }
+
+        HyperCubePage build(int top, int left, int pageWidth) {
+            return new HyperCubePage(top, left, pageWidth, rows, Arrays.copyOf(numbers, count),
+                    Arrays.copyOf(textIndexes, count), Arrays.copyOf(elemNumbers, count),
+                    Arrays.copyOf(states, count), texts.toArray(new String[0]));
+        }
+    }
+}
@@ -18,44 +18,154 @@
 
 package EngineAPI;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Map;
-import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLParameters;
 import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.framing.TextFrame;
 import org.java_websocket.handshake.ServerHandshake;
+import Shared.AllowlistHostnameVerifier;
 import Shared.Interfaces.AuthCertificate;
+import Shared.Interfaces.ByteChannelListener;
+import Shared.Interfaces.ChangeListener;
 import Shared.Interfaces.ChannelListener;
+import Shared.Interfaces.FragmentListener;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
 
 /**
  * QlikWebSocketClient.java (UTF-8)
  * An example of a class that acts as a WebSocket client to communicate with the Qlik Engine, 
  * which uses JSON-RPC.
  * 
- * @version 1.0
+ * @version 1.3
  * @author Steven Jenkins De Haro
  */
 public class QlikWebSocketClient extends WebSocketClient {
     
+    private static final int DEFAULT_TEXT_CACHE_CAPACITY = 4096;
+    private static final ThreadLocal<ByteBuffer> RENDER_BUFFER = 
+            ThreadLocal.withInitial(() -> ByteBuffer.allocate(1024));
     private final List<ChannelListener> _listeners = new ArrayList<ChannelListener>();
+    private final List<ByteChannelListener> _byteListeners = new CopyOnWriteArrayList<>();
+    private final List<FragmentListener> _fragmentListeners = new CopyOnWriteArrayList<>();
+    private final List<ChangeListener> _changeListeners = new CopyOnWriteArrayList<>();
+    private final ByteBufferPool _bufferPool = new ByteBufferPool(4);
+    private final Map<Integer, PendingCall> _pendingCalls = new ConcurrentHashMap<>();
+    // Sent calls in the order they were sent, so the oldest is the first entry.
+    private final ConcurrentSkipListMap<Long, PendingCall> _sentCalls = new ConcurrentSkipListMap<>();
+    private final AtomicLong _nextSendSequence = new AtomicLong();
+    private final AtomicInteger _nextRequestId = new AtomicInteger(1);
+    private final AtomicInteger _decodingCalls = new AtomicInteger();
+    private final Map<String, TextInternCache> _textCaches = new ConcurrentHashMap<>();
+    private volatile int _textCacheCapacity = DEFAULT_TEXT_CACHE_CAPACITY;
+    private final HandleRegistry _handleRegistry = new HandleRegistry(this);
+    private int _streamedCallId = -1; // Only used by the read thread.
+    private final CompletableFuture<Session> _openFuture = new CompletableFuture<>();
+    private final AllowlistHostnameVerifier _hostnameVerifier;
+    private volatile long _connectStartTime;
+    private volatile RpcTracer _tracer;
+    private volatile PriorityLanes _lanes;
+    private long _messageStartTime; // Only used by the read thread.
+    private long _messageEndTime; // Only used by the read thread.
+    private PendingCall _answeredCall; // Only used by the read thread.
     
     public QlikWebSocketClient(String wssServerUrl, AuthCertificate qlikCert) throws Exception {
-        super(new URI(wssServerUrl), 
+        this(wssServerUrl, qlikCert, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Constructions a new {@see QlikWebSocketClient} instance that limits the size
+     * of messages it keeps in memory. A frame or reassembled message over the 
+     * limit closes the connection with code 1009 (message too big), while 
+     * fragmented messages streamed to a {@see FragmentListener} are not limited.
+     * @param wssServerUrl WebSocket address of the Engine, for example, wss://server:4747/app/.
+     * @param qlikCert Qlik certificate used for authentication.
+     * @param maxMessageSize Maximum size of a message in bytes.
+     * @throws Exception 
+     */
+    public QlikWebSocketClient(String wssServerUrl, AuthCertificate qlikCert, int maxMessageSize) 
+            throws Exception {
+        
+        this(wssServerUrl, qlikCert, maxMessageSize, AllowlistHostnameVerifier.strict());
+    }
+    
+    /**
+     * Constructions a new {@see QlikWebSocketClient} instance that only skips the
+     * hostname check for the hosts in an allowlist.
+     * @param wssServerUrl WebSocket address of the Engine, for example, wss://server:4747/app/.
+     * @param qlikCert Qlik certificate used for authentication.
+     * @param hostnameVerifier Allowlist of hostnames that are not in the server's certificate.
+     * @throws Exception 
+     */
+    public QlikWebSocketClient(String wssServerUrl, AuthCertificate qlikCert, 
+            AllowlistHostnameVerifier hostnameVerifier) throws Exception {
+        
+        this(wssServerUrl, qlikCert, Integer.MAX_VALUE, hostnameVerifier);
+    }
+    
+    /**
+     * Constructions a new {@see QlikWebSocketClient} instance.
+     * @param wssServerUrl WebSocket address of the Engine, for example, wss://server:4747/app/.
+     * @param qlikCert Qlik certificate used for authentication.
+     * @param maxMessageSize Maximum size of a message in bytes.
+     * @param hostnameVerifier Allowlist of hostnames that are not in the server's certificate.
+     * @throws Exception 
+     */
+    public QlikWebSocketClient(String wssServerUrl, AuthCertificate qlikCert, int maxMessageSize,
+            AllowlistHostnameVerifier hostnameVerifier) throws Exception {
+        
+        super(new URI(wssServerUrl), new EngineDraft(maxMessageSize),
                 Map.of("X-Qlik-User", "UserDirectory=internal; UserId=sa_engine"));
         
+        ((EngineDraft) getDraft()).attach(this);
+        
         /*
          * When target hostname is not listed in server's certificate SAN field,
-         * use this as a whitelist for exceptions to continue. For example,
-         * hostname.equals("xx.xx.xx.xx" or "localhost") ? true : false
-         * See https://support.qlik.com/articles/000078616 for more info.
+         * the connection fails unless the allowlist of this client has the host.
+         * Nothing is set globally, so other clients keep their own hostname checks.
          */
-        HttpsURLConnection.setDefaultHostnameVerifier((String hostname, SSLSession session) -> true);
+        _hostnameVerifier = hostnameVerifier;
         
         this.setSocketFactory(qlikCert.getSSLContext().getSocketFactory());
     }
     
+    /**
+     * Skips the hostname check of the TLS handshake for allowlisted hosts only,
+     * so clients built without an allowlist keep the full check.
+     * @param sslParameters Parameters of the TLS connection.
+     */
+    @Override
+    protected void onSetSSLParameters(SSLParameters sslParameters) {
+        if (!_hostnameVerifier.isAllowlisted(uri.getHost())) {
+            super.onSetSSLParameters(sslParameters);
+        }
+    }
+    
     public void addListener(ChannelListener toAdd) {
         _listeners.add(toAdd);
     }
@@ -64,6 +174,866 @@ public class QlikWebSocketClient extends WebSocketClient {
 	_listeners.remove(toRemove);
     }
     
+    /**
+     * Adds a listener that receives the raw UTF-8 bytes of every message. While
+     * at least one is added, messages are no longer decoded into a String unless
+     * a {@see ChannelListener} is added as well.
+     * @param toAdd Listener to add.
+     */
+    public void addByteListener(ByteChannelListener toAdd) {
+        _byteListeners.add(toAdd);
+    }
+    
+    public void removeByteListener(ByteChannelListener toRemove) {
+        _byteListeners.remove(toRemove);
+    }
+    
+    /**
+     * Adds a listener that receives the fragments of fragmented messages as they
+     * arrive instead of after reassembly, which keeps very large replies like 
+     * those of GetHyperCubeData or GetTablesAndKeys out of memory. A pending 
+     * call whose response is streamed completes with an empty result after the
+     * last fragment, since its content went to the listener. Responses to calls
+     * that decode their result, like {@see #getHyperCubeData}, are reassembled instead.
+     * @param toAdd Listener to add.
+     */
+    public void addFragmentListener(FragmentListener toAdd) {
+        _fragmentListeners.add(toAdd);
+    }
+    
+    public void removeFragmentListener(FragmentListener toRemove) {
+        _fragmentListeners.remove(toRemove);
+    }
+    
+    /**
+     * Adds a listener that is notified when the Engine reports handles as changed,
+     * for example, after an app was reloaded.
+     * @param toAdd Listener to add.
+     */
+    public void addChangeListener(ChangeListener toAdd) {
+        _changeListeners.add(toAdd);
+    }
+    
+    public void removeChangeListener(ChangeListener toRemove) {
+        _changeListeners.remove(toRemove);
+    }
+    
+    boolean isBytePathEnabled() {
+        return !_byteListeners.isEmpty() || !_fragmentListeners.isEmpty() || _decodingCalls.get() > 0;
+    }
+    
+    /**
+     * Checks whether a fragmented message is streamed to the fragment listeners.
+     * Responses to calls with a decoder are reassembled instead, since decoding 
+     * needs the whole result.
+     * @param firstFragment UTF-8 payload of the first fragment of the message.
+     * @return True if the message is streamed, and false if it is reassembled.
+     */
+    boolean isStreamingEnabled(ByteBuffer firstFragment) {
+        if (_fragmentListeners.isEmpty()) {
+            return false;
+        } else if (_decodingCalls.get() == 0) {
+            return true;
+        }
+        
+        var pending = _pendingCalls.get(findResponseId(firstFragment));
+        return pending == null || pending.decoder == null;
+    }
+    
+    ByteBufferPool getBufferPool() {
+        return _bufferPool;
+    }
+    
+    /**
+     * Initiates the WebSocket connection without blocking the calling thread. 
+     * Cancelling the returned future or reaching the timeout aborts the connection.
+     * A client can only be connected once.
+     * @param timeout Maximum time to wait for the connection to open.
+     * @return CompletableFuture with the open session, or completed exceptionally
+     * with a {@see java.util.concurrent.TimeoutException} if the timeout is reached.
+     */
+    public CompletableFuture<Session> connectAsync(Duration timeout) {
+        _connectStartTime = System.nanoTime();
+        
+        _openFuture.orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS)
+                .whenComplete((session, ex) -> {
+                    if (ex != null) {
+                        abortConnect();
+                    }
+                });
+        
+        try {
+            connect();
+        } catch (IllegalStateException ex) {
+            _openFuture.completeExceptionally(ex); // Already connected once.
+        }
+        
+        return _openFuture;
+    }
+    
+    /**
+     * Connects to several Engine nodes in parallel.
+     * @param wssServerUrls WebSocket addresses of the nodes.
+     * @param qlikCert Qlik certificate used for authentication.
+     * @param timeout Maximum time to wait for each connection to open.
+     * @return CompletableFuture with the sessions in the order of the addresses,
+     * which fails as soon as any of them fails. The other sessions are then 
+     * cancelled or closed.
+     * @throws IllegalArgumentException If no address is given.
+     * @throws Exception 
+     */
+    public static CompletableFuture<List<Session>> connectAll(List<String> wssServerUrls, 
+            AuthCertificate qlikCert, Duration timeout) throws Exception {
+        
+        var futures = startConnects(wssServerUrls, qlikCert, timeout);
+        var all = new CompletableFuture<List<Session>>();
+        var remaining = new AtomicInteger(futures.size());
+        
+        futures.forEach(future -> future.whenComplete((session, ex) -> {
+            if (ex != null) {
+                all.completeExceptionally(ex);
+            } else if (remaining.decrementAndGet() == 0) {
+                var sessions = new ArrayList<Session>(futures.size());
+                futures.forEach(opened -> sessions.add(opened.join()));
+                all.complete(sessions);
+            }
+        }));
+        
+        // The first failure, or a cancel, does not wait for the slower connections.
+        all.whenComplete((sessions, ex) -> {
+            if (ex != null) {
+                futures.forEach(future -> {
+                    future.cancel(false);
+                    future.thenAccept(Session::close);
+                });
+            }
+        });
+        
+        return all;
+    }
+    
+    /**
+     * Connects to several Engine nodes in parallel and keeps the first one that 
+     * opens, which cuts the connect latency to that of the fastest node. The 
+     * connections that lose the race are cancelled or closed.
+     * @param wssServerUrls WebSocket addresses of the nodes.
+     * @param qlikCert Qlik certificate used for authentication.
+     * @param timeout Maximum time to wait for a connection to open.
+     * @return CompletableFuture with the first session that opened, or completed
+     * exceptionally if none of the connections could be opened.
+     * @throws IllegalArgumentException If no address is given.
+     * @throws Exception 
+     */
+    public static CompletableFuture<Session> connectFirst(List<String> wssServerUrls, 
+            AuthCertificate qlikCert, Duration timeout) throws Exception {
+        
+        var futures = startConnects(wssServerUrls, qlikCert, timeout);
+        var winner = new CompletableFuture<Session>();
+        var failures = new AtomicInteger();
+        
+        futures.forEach(future -> future.whenComplete((session, ex) -> {
+            if (ex == null) {
+                if (!winner.complete(session)) {
+                    session.close(); // Lost the race.
+                }
+            } else if (failures.incrementAndGet() == futures.size()) {
+                winner.completeExceptionally(ex);
+            }
+        }));
+        
+        winner.whenComplete((session, ex) -> futures.forEach(future -> future.cancel(false)));
+        
+        return winner;
+    }
+    
+    private static List<CompletableFuture<Session>> startConnects(List<String> wssServerUrls, 
+            AuthCertificate qlikCert, Duration timeout) throws Exception {
+        
+        if (wssServerUrls.isEmpty()) {
+            throw new IllegalArgumentException("At least one address is needed.");
+        }
+        
+        var futures = new ArrayList<CompletableFuture<Session>>(wssServerUrls.size());
+        
+        try {
+            for (var url : wssServerUrls) {
+                futures.add(new QlikWebSocketClient(url, qlikCert).connectAsync(timeout));
+            }
+        } catch (Exception ex) {
+            // Nobody gets the connections that already started, so they are stopped here.
+            futures.forEach(future -> {
+                future.cancel(false);
+                future.thenAccept(Session::close);
+            });
+            throw ex;
+        }
+        
+        return futures;
+    }
+    
+    /**
+     * Stops a connection attempt that is still in progress by closing its socket,
+     * or closes the connection if it opened in the meantime.
+     */
+    private void abortConnect() {
+        close();
+        
+        var socket = getSocket();
+        
+        if (socket != null && !isOpen()) {
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                // Nothing else to do since the socket is being discarded.
+            }
+        }
+    }
+    
+    /**
+     * Sends a JSON-RPC request to the Engine and correlates the response by its id.
+     * With {@see PriorityLanes}, the priority is the default of the method.
+     * @param method Engine method to call, for example, OpenDoc.
+     * @param handle Handle of the object the method is called on, for example, -1 for Global.
+     * @param params Parameters as a {@see org.json.JSONArray} or {@see JSONObject}.
+     * @return CompletableFuture with the result object of the response, or completed
+     * exceptionally with an {@see EngineException} if the Engine returned an error.
+     */
+    public CompletableFuture<JSONObject> call(String method, int handle, Object params) {
+        return call(method, handle, params, RpcPriority.forMethod(method));
+    }
+    
+    /**
+     * Sends a JSON-RPC request to the Engine with a priority, which only matters
+     * once {@see PriorityLanes} are enabled.
+     * @param method Engine method to call, for example, GetLayout.
+     * @param handle Handle of the object the method is called on, for example, -1 for Global.
+     * @param params Parameters as a {@see org.json.JSONArray} or {@see JSONObject}.
+     * @param priority Priority of the call.
+     * @return CompletableFuture with the result object of the response, or completed
+     * exceptionally with an {@see EngineException} if the Engine returned an error,
+     * or with a {@see java.util.concurrent.RejectedExecutionException} if the queue
+     * of its priority is full.
+     */
+    public CompletableFuture<JSONObject> call(String method, int handle, Object params, 
+            RpcPriority priority) {
+        
+        return send(new PendingCall(_nextRequestId.getAndIncrement(), method, handle, null), 
+                params, priority);
+    }
+    
+    /**
+     * Sends a request rendered from a precompiled template, which writes its bytes
+     * into a buffer reused by the calling thread instead of building a JSON object 
+     * and a string for every call.
+     * @param template Template of the request.
+     * @param handle Handle of the object the method is called on.
+     * @param arguments Values of the placeholders of the template, which can be 
+     * reused once this method returns, or null if it has none.
+     * @return CompletableFuture with the result object of the response, or completed
+     * exceptionally with an {@see EngineException} if the Engine returned an error.
+     */
+    public CompletableFuture<JSONObject> call(RequestTemplate template, int handle, 
+            RequestTemplate.Arguments arguments) {
+        
+        var pending = new PendingCall(_nextRequestId.getAndIncrement(), template.getMethod(), 
+                handle, null);
+        ByteBuffer buffer;
+        
+        try {
+            buffer = template.render(RENDER_BUFFER.get(), pending.id, handle, arguments);
+            RENDER_BUFFER.set(buffer); // Keeps the buffer if it had to grow.
+        } catch (RuntimeException ex) {
+            pending.future.completeExceptionally(ex);
+            return pending.future;
+        }
+        
+        var lanes = _lanes; // Read once, so a call is never queued with the buffer of the thread.
+        
+        if (lanes != null) {
+            // A queued call cannot keep using the buffer of the calling thread.
+            buffer = ByteBuffer.allocate(buffer.remaining()).put(buffer).flip();
+        }
+        
+        var payload = buffer;
+        
+        dispatch(lanes, pending, RpcPriority.forMethod(template.getMethod()), () -> {
+            var frame = new TextFrame();
+            
+            frame.setPayload(payload); // Copied when the frame is encoded.
+            sendFrame(frame);
+        });
+        
+        return pending.future;
+    }
+    
+    /**
+     * Gets a page of hypercube data, which is decoded straight from the UTF-8 bytes
+     * of the response into primitive arrays instead of JSON objects per cell. The
+     * texts of each column go through the {@see TextInternCache} of its field, so
+     * repeated dimension values are only decoded once across pages.
+     * @param object Handle of the object with the hypercube.
+     * @param path Path to the hypercube definition, for example, /qHyperCubeDef.
+     * @param top First row of the page.
+     * @param left First column of the page.
+     * @param width Number of columns of the page.
+     * @param height Number of rows of the page.
+     * @return CompletableFuture with the page.
+     */
+    public CompletableFuture<HyperCubePage> getHyperCubeData(EngineHandle object, String path, 
+            int top, int left, int width, int height) {
+        
+        var page = new JSONObject()
+                .put("qTop", top)
+                .put("qLeft", left)
+                .put("qWidth", width)
+                .put("qHeight", height);
+        
+        IntFunction<TextInternCache> textCaches = _textCacheCapacity == 0 ? null 
+                : column -> getTextCache(object.getHandle() + path + "#" + (left + column));
+        
+        return callDecoded("GetHyperCubeData", object.getHandle(), 
+                new JSONArray().put(path).put(new JSONArray().put(page)), 
+                reader -> QMatrixDecoder.decodeDataPages(reader, textCaches))
+                .thenApply(pages -> pages.get(0));
+    }
+    
+    private TextInternCache getTextCache(String field) {
+        return _textCaches.computeIfAbsent(field, key -> new TextInternCache(_textCacheCapacity));
+    }
+    
+    /**
+     * Sets the number of texts cached per field by {@see #getHyperCubeData}, 
+     * which drops the caches filled so far.
+     * @param capacity Maximum number of texts per field, or 0 to not cache texts.
+     */
+    public void setTextCacheCapacity(int capacity) {
+        _textCacheCapacity = Math.max(0, capacity);
+        _textCaches.clear();
+    }
+    
+    /**
+     * Gets the hits, misses and hit ratio of the text caches per field, where a
+     * field is named by its object handle, hypercube path and column.
+     * @return Metrics of the text caches as JSON.
+     */
+    public JSONObject getTextCacheStats() {
+        var fields = new JSONObject();
+        long hits = 0;
+        long misses = 0;
+        
+        for (var entry : _textCaches.entrySet()) {
+            fields.put(entry.getKey(), entry.getValue().toJson());
+            hits += entry.getValue().getHits();
+            misses += entry.getValue().getMisses();
+        }
+        
+        return new JSONObject()
+                .put("hits", hits)
+                .put("misses", misses)
+                .put("hitRatio", hits + misses == 0 ? 0 : (double) hits / (hits + misses))
+                .put("fields", fields);
+    }
+    
+    /**
+     * Sends a request whose result is decoded from the UTF-8 bytes of the response.
+     * The byte path is enabled while such calls are pending.
+     * @param method Engine method to call.
+     * @param handle Handle of the object the method is called on.
+     * @param params Parameters of the method.
+     * @param decoder Decoder of the result, which gets a reader positioned at it.
+     * @return CompletableFuture with the decoded result.
+     */
+    private <T> CompletableFuture<T> callDecoded(String method, int handle, Object params, 
+            Function<Utf8JsonReader, T> decoder) {
+        
+        var result = new CompletableFuture<T>();
+        var pending = new PendingCall(_nextRequestId.getAndIncrement(), method, handle, 
+                reader -> result.complete(decoder.apply(reader)));
+        
+        _decodingCalls.incrementAndGet();
+        result.whenComplete((value, ex) -> _decodingCalls.decrementAndGet());
+        
+        send(pending, params, RpcPriority.forMethod(method)).whenComplete((json, ex) -> {
+            if (ex != null) {
+                result.completeExceptionally(ex);
+            } else if (!result.isDone()) {
+                // Answered as a JSONObject instead, so the decoder reads it from its text.
+                try {
+                    result.complete(decoder.apply(new Utf8JsonReader(
+                            ByteBuffer.wrap(json.toString().getBytes(StandardCharsets.UTF_8)))));
+                } catch (RuntimeException decodeEx) {
+                    result.completeExceptionally(decodeEx);
+                }
+            }
+        });
+        
+        return result;
+    }
+    
+    private CompletableFuture<JSONObject> send(PendingCall pending, Object params, RpcPriority priority) {
+        var request = new JSONObject()
+                .put("jsonrpc", "2.0")
+                .put("id", pending.id)
+                .put("method", pending.method)
+                .put("handle", pending.handle)
+                .put("params", params);
+        String text;
+        
+        try {
+            text = request.toString(); // Now, since the caller may change the params later.
+        } catch (RuntimeException ex) {
+            pending.future.completeExceptionally(ex);
+            return pending.future;
+        }
+        
+        dispatch(_lanes, pending, priority, () -> send(text));
+        
+        return pending.future;
+    }
+    
+    /**
+     * Sends a call right away, or through the {@see PriorityLanes} if enabled.
+     * @param lanes Lanes read by the caller, or null if they are not enabled.
+     * @param pending Call to send.
+     * @param priority Priority of the call.
+     * @param sender Writes the request to the socket.
+     */
+    private void dispatch(PriorityLanes lanes, PendingCall pending, RpcPriority priority, 
+            Runnable sender) {
+        
+        if (lanes == null) {
+            transmit(pending, sender);
+        } else {
+            lanes.submit(priority, pending.future, () -> transmit(pending, sender));
+        }
+    }
+    
+    private void transmit(PendingCall pending, Runnable sender) {
+        _pendingCalls.put(pending.id, pending);
+        
+        try {
+            pending.sentTime = System.nanoTime();
+            pending.sendSequence = _nextSendSequence.getAndIncrement();
+            _sentCalls.put(pending.sendSequence, pending);
+            sender.run();
+        } catch (RuntimeException ex) {
+            removePending(pending.id);
+            pending.future.completeExceptionally(ex);
+        }
+    }
+    
+    /**
+     * Stops tracking a call once it is answered or failed.
+     * @param id Id of the call.
+     * @return The call, or null if it was not pending.
+     */
+    private PendingCall removePending(int id) {
+        var pending = _pendingCalls.remove(id);
+        
+        if (pending != null) {
+            _sentCalls.remove(pending.sendSequence, pending);
+        }
+        
+        return pending;
+    }
+    
+    /**
+     * Starts scheduling calls with {@see PriorityLanes}, so only a limited number
+     * of calls are sent to the Engine at a time and interactive calls go ahead
+     * of queued bulk calls. It must be enabled before calls are sent.
+     * @param maxInFlight Number of calls sent to the Engine at a time, of which bulk
+     * calls may use all but one, so it must be at least two.
+     * @param interactiveWeight Number of interactive calls sent before a waiting bulk call.
+     * @param maxQueued Number of calls each priority can have waiting.
+     * @return The lanes, which report their metrics.
+     * @throws IllegalArgumentException If maxInFlight is less than two.
+     * @throws IllegalStateException If the lanes were enabled already.
+     */
+    public synchronized PriorityLanes enablePriorityLanes(int maxInFlight, int interactiveWeight, 
+            int maxQueued) {
+        
+        if (_lanes != null) {
+            throw new IllegalStateException("Priority lanes are enabled already.");
+        }
+        
+        _lanes = new PriorityLanes(maxInFlight, interactiveWeight, maxQueued);
+        return _lanes;
+    }
+    
+    public Optional<PriorityLanes> getPriorityLanes() {
+        return Optional.ofNullable(_lanes);
+    }
+    
+    /**
+     * Starts tracing every call with a new {@see RpcTracer}, which replaces the
+     * tracer that was used before, if any.
+     * @param capacity Number of traces to keep.
+     * @return The tracer that records the calls.
+     */
+    public RpcTracer enableTracing(int capacity) {
+        var tracer = new RpcTracer(capacity);
+        _tracer = tracer;
+        return tracer;
+    }
+    
+    public void disableTracing() {
+        _tracer = null;
+    }
+    
+    public Optional<RpcTracer> getTracer() {
+        return Optional.ofNullable(_tracer);
+    }
+    
+    boolean isTracing() {
+        return _tracer != null;
+    }
+    
+    /**
+     * Notes when the frames of a text message arrive for tracing.
+     * @param isStart True if the frame starts a message.
+     * @param isFin True if the frame ends a message.
+     */
+    void onTextFrame(boolean isStart, boolean isFin) {
+        long now = System.nanoTime();
+        
+        if (isStart) {
+            _messageStartTime = now;
+        }
+        
+        if (isFin) {
+            _messageEndTime = now;
+        }
+    }
+    
+    /**
+     * Records the trace of the call answered by the last message once all 
+     * listeners are done with it.
+     */
+    private void finishTrace() {
+        var tracer = _tracer;
+        var pending = _answeredCall;
+        
+        _answeredCall = null;
+        
+        if (tracer == null || pending == null || pending.sentTime == 0) {
+            return;
+        }
+        
+        // The first frame can be noted before the send call has returned.
+        long firstByte = Math.max(_messageStartTime, pending.sentTime);
+        
+        tracer.record(new RpcTracer.Trace(pending.id, pending.method, pending.handle, 
+                pending.sentTime, firstByte, Math.max(_messageEndTime, firstByte), System.nanoTime(), 
+                pending.future.isCompletedExceptionally()));
+    }
+    
+    /**
+     * Opens an app and tracks its handle in the {@see HandleRegistry} of this session.
+     * @param appId Id of the app to open.
+     * @return CompletableFuture with the handle of the document.
+     */
+    public CompletableFuture<EngineHandle> openDoc(String appId) {
+        return call("OpenDoc", -1, new JSONArray().put(appId))
+                .thenApply(result -> _handleRegistry.register(result, -1, false));
+    }
+    
+    /**
+     * Gets an object of a document and tracks its handle in the {@see HandleRegistry}
+     * of this session.
+     * @param doc Handle of the document that owns the object.
+     * @param objectId Id of the object to get.
+     * @return CompletableFuture with the handle of the object.
+     */
+    public CompletableFuture<EngineHandle> getObject(EngineHandle doc, String objectId) {
+        return call("GetObject", doc.getHandle(), new JSONArray().put(objectId))
+                .thenApply(result -> _handleRegistry.register(result, doc.getHandle(), false));
+    }
+    
+    /**
+     * Creates a session object and tracks its handle in the {@see HandleRegistry}
+     * of this session. The object is destroyed on the Engine once the returned 
+     * handle and every retained reference to it are closed.
+     * @param doc Handle of the document that owns the object.
+     * @param properties Properties of the object, which must include qInfo.qType.
+     * @return CompletableFuture with the handle of the session object.
+     */
+    public CompletableFuture<EngineHandle> createSessionObject(EngineHandle doc, JSONObject properties) {
+        return call("CreateSessionObject", doc.getHandle(), new JSONArray().put(properties))
+                .thenApply(result -> _handleRegistry.register(result, doc.getHandle(), true));
+    }
+    
+    public HandleRegistry getHandleRegistry() {
+        return _handleRegistry;
+    }
+    
+    /**
+     * Gets the number of calls that were sent and are waiting for their response,
+     * plus those waiting in the {@see PriorityLanes}, which is the depth of the
+     * queue of this session.
+     * @return Number of pending calls.
+     */
+    public int getPendingCount() {
+        var lanes = _lanes;
+        return _pendingCalls.size() + (lanes == null ? 0 : lanes.getQueuedCount());
+    }
+    
+    /**
+     * Gets how long the oldest pending call has been waiting for its response, 
+     * which grows while a large response or a slow call holds up this session.
+     * @return Age of the oldest pending call in nanoseconds, or 0 if none is pending.
+     */
+    public long getPendingAgeNanos() {
+        var oldest = _sentCalls.firstEntry();
+        
+        return oldest == null ? 0 : Math.max(0, System.nanoTime() - oldest.getValue().sentTime);
+    }
+    
+    /**
+     * Sends a batch of calls where calls that depend on the handle returned by 
+     * another call are sent as soon as that call completes, and all independent 
+     * calls are sent at once. For example, hundreds of GetLayout calls, each on 
+     * the handle of their own GetObject call, take two round trips instead of 
+     * hundreds. If any call fails, the returned future fails with that error.
+     * @param calls Calls to send, which may be listed in any order.
+     * @return CompletableFuture with the result objects mapped by call key in
+     * the order the calls were listed.
+     * @throws IllegalArgumentException If keys repeat, refer to an unknown call, 
+     * or depend on each other in a cycle.
+     */
+    public CompletableFuture<Map<String, JSONObject>> batch(List<RpcCall> calls) {
+        var callsByKey = new LinkedHashMap<String, RpcCall>();
+        
+        calls.forEach(call -> {
+            if (callsByKey.put(call.getKey(), call) != null) {
+                throw new IllegalArgumentException("Duplicate call key: " + call.getKey());
+            }
+        });
+        
+        var futures = new HashMap<String, CompletableFuture<JSONObject>>();
+        
+        // Validates the whole batch before anything is sent.
+        for (var call : orderByDependency(callsByKey)) {
+            CompletableFuture<JSONObject> future;
+            
+            if (call.getHandleFrom().isPresent()) {
+                future = futures.get(call.getHandleFrom().get())
+                        .thenCompose(parent -> call(call.getMethod(), getReturnedHandle(parent), 
+                                call.getParams()));
+            } else {
+                future = call(call.getMethod(), call.getHandle(), call.getParams());
+            }
+            
+            futures.put(call.getKey(), future);
+        }
+        
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> {
+                    var results = new LinkedHashMap<String, JSONObject>();
+                    callsByKey.keySet().forEach(key -> results.put(key, futures.get(key).join()));
+                    return results;
+                });
+    }
+    
+    /**
+     * Sorts the calls of a batch so that every call comes after the call it 
+     * depends on for its handle.
+     * @param callsByKey All calls of the batch.
+     * @return Calls in dependency order.
+     * @throws IllegalArgumentException If a call refers to an unknown call or 
+     * the calls depend on each other in a cycle.
+     */
+    private static List<RpcCall> orderByDependency(Map<String, RpcCall> callsByKey) {
+        var ordered = new ArrayList<RpcCall>(callsByKey.size());
+        var done = new HashSet<String>();
+        
+        for (var call : callsByKey.values()) {
+            var path = new ArrayList<RpcCall>();
+            var visiting = new HashSet<String>();
+            var current = call;
+            
+            // Walks up the dependency chain until a call that is already ordered.
+            while (current != null && !done.contains(current.getKey())) {
+                if (!visiting.add(current.getKey())) {
+                    throw new IllegalArgumentException("Cyclic handle dependency at call: " 
+                            + current.getKey());
+                }
+                
+                path.add(current);
+                
+                if (current.getHandleFrom().isEmpty()) {
+                    break;
+                }
+                
+                var parentKey = current.getHandleFrom().get();
+                current = callsByKey.get(parentKey);
+                
+                if (current == null) {
+                    throw new IllegalArgumentException("Unknown call key: " + parentKey);
+                }
+            }
+            
+            for (int i = path.size() - 1; i >= 0; i--) {
+                ordered.add(path.get(i));
+                done.add(path.get(i).getKey());
+            }
+        }
+        
+        return ordered;
+    }
+    
+    /**
+     * Gets the handle of the object returned by a call like OpenDoc or GetObject.
+     * @param result Result object of the response.
+     * @return Handle found in qReturn.
+     * @throws JSONException If the result does not contain a handle.
+     */
+    public static int getReturnedHandle(JSONObject result) {
+        return result.getJSONObject("qReturn").getInt("qHandle");
+    }
+    
+    /**
+     * Checks whether responses must be parsed to complete calls or track handles.
+     * @return True if there is anything waiting for a response.
+     */
+    private boolean isResponseProcessingNeeded() {
+        return !_pendingCalls.isEmpty() || _handleRegistry.getOpenCount() > 0 
+                || !_changeListeners.isEmpty();
+    }
+    
+    /**
+     * Completes the pending call that matches the id of a response, if any, 
+     * untracks the handles that the Engine reports as closed, and notifies the
+     * change listeners about the handles reported as changed.
+     * @param message Tokener over the message received from the Engine.
+     */
+    private void processResponse(JSONTokener message) {
+        Object json;
+        
+        try {
+            json = message.nextValue();
+        } catch (JSONException ex) {
+            return;
+        }
+        
+        if (!(json instanceof JSONObject)) {
+            return;
+        }
+        
+        var response = (JSONObject) json;
+        
+        if (response.has("close")) {
+            _handleRegistry.onHandlesClosed(response.getJSONArray("close"));
+        }
+        
+        if (response.has("change") && !_changeListeners.isEmpty()) {
+            var changed = response.getJSONArray("change");
+            var handles = new ArrayList<Integer>(changed.length());
+            
+            for (int i = 0; i < changed.length(); i++) {
+                handles.add(changed.getInt(i));
+            }
+            
+            onHandlesChanged(handles);
+        }
+        
+        if (!response.has("id")) {
+            return; // Notifications like OnConnected don't have an id.
+        }
+        
+        var pending = removePending(response.optInt("id"));
+        
+        if (pending == null) {
+            return;
+        }
+        
+        _answeredCall = pending;
+        
+        if (response.has("error")) {
+            pending.future.completeExceptionally(
+                    new EngineException(pending.method, response.getJSONObject("error")));
+        } else {
+            pending.future.complete(response.optJSONObject("result", new JSONObject()));
+        }
+    }
+    
+    private void onHandlesChanged(List<Integer> handles) {
+        _changeListeners.forEach(listener -> listener.handlesChanged(handles));
+    }
+    
+    /**
+     * Decodes a response straight from its UTF-8 bytes if it answers a call that
+     * was sent with a decoder. Errors are left to {@see #processResponse(JSONTokener)}.
+     * @param message UTF-8 payload of the message.
+     * @return True if the response was handled, and false if not.
+     */
+    private boolean decodeResponse(ByteBuffer message) {
+        var pending = _pendingCalls.get(findResponseId(message));
+        
+        if (pending == null || pending.decoder == null) {
+            return false;
+        }
+        
+        var reader = new Utf8JsonReader(message.duplicate());
+        List<Integer> closed = null;
+        List<Integer> changed = null;
+        boolean hasResult = false;
+        
+        try {
+            reader.beginObject();
+            
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "result":
+                        pending.decoder.accept(reader);
+                        hasResult = true;
+                        break;
+                    case "close":
+                        closed = readHandles(reader);
+                        break;
+                    case "change":
+                        changed = readHandles(reader);
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+        } catch (RuntimeException ex) {
+            removePending(pending.id);
+            pending.future.completeExceptionally(ex);
+            return true;
+        }
+        
+        if (!hasResult) {
+            return false;
+        }
+        
+        removePending(pending.id);
+        _answeredCall = pending;
+        
+        if (closed != null) {
+            _handleRegistry.onHandlesClosed(new JSONArray(closed));
+        }
+        
+        if (changed != null && !_changeListeners.isEmpty()) {
+            onHandlesChanged(changed);
+        }
+        
+        pending.future.complete(new JSONObject());
+        return true;
+    }
+    
+    private static List<Integer> readHandles(Utf8JsonReader reader) {
+        var handles = new ArrayList<Integer>();
+        
+        reader.beginArray();
+        
+        while (reader.hasNext()) {
+            handles.add(reader.nextInt());
+        }
+        
+        return handles;
+    }
+    
     // Our event to notify everybody interested.
     private void onResponseReceived(String message) {
         _listeners.forEach(listener -> {
@@ -73,24 +1043,178 @@ public class QlikWebSocketClient extends WebSocketClient {
 
     @Override
     public void onOpen(ServerHandshake sh) {
+        _openFuture.complete(new Session(this, Duration.ofNanos(System.nanoTime() - _connectStartTime)));
         onResponseReceived("Connected");
     }
 
     @Override
     public void onMessage(String message) {
+        if (isResponseProcessingNeeded()) {
+            processResponse(new JSONTokener(message));
+        }
+        
         onResponseReceived(message);
+        finishTrace();
+    }
+    
+    /**
+     * Handles a text message that arrived through the byte path of the {@see EngineDraft}.
+     * The message is parsed straight from the UTF-8 bytes, and it is only decoded 
+     * into a String if there are listeners that ask for it.
+     * @param message UTF-8 payload of the complete message.
+     */
+    void onUtf8Message(ByteBuffer message) {
+        if (_decodingCalls.get() > 0 && decodeResponse(message)) {
+            // Answered without parsing the message into JSON objects.
+        } else if (isResponseProcessingNeeded()) {
+            processResponse(new JSONTokener(toInputStream(message.duplicate())));
+        }
+        
+        _byteListeners.forEach(listener -> listener.bytesReceived(message.duplicate()));
+        
+        if (!_listeners.isEmpty()) {
+            onResponseReceived(StandardCharsets.UTF_8.decode(message.duplicate()).toString());
+        }
+        
+        finishTrace();
+    }
+    
+    /**
+     * Handles a fragment of a text message that is streamed by the {@see EngineDraft}.
+     * @param fragment UTF-8 payload of the fragment.
+     * @param isFirst True if this is the first fragment of the message.
+     * @param isLast True if this is the last fragment of the message.
+     */
+    void onUtf8Fragment(ByteBuffer fragment, boolean isFirst, boolean isLast) {
+        if (isFirst) {
+            _streamedCallId = -1;
+        }
+        
+        if (_streamedCallId == -1) {
+            _streamedCallId = findResponseId(fragment);
+        }
+        
+        _fragmentListeners.forEach(listener -> 
+                listener.fragmentReceived(fragment.duplicate(), isFirst, isLast));
+        
+        if (isLast) {
+            var pending = removePending(_streamedCallId);
+            
+            if (pending != null && pending.decoder != null) {
+                // Its id was not in the first fragment, so the result went to the listeners.
+                pending.future.completeExceptionally(new IllegalStateException("The response to " 
+                        + pending.method + " was streamed to the fragment listeners instead of decoded."));
+            } else if (pending != null) {
+                _answeredCall = pending;
+                pending.future.complete(new JSONObject());
+            }
+            
+            _streamedCallId = -1;
+            finishTrace();
+        }
+    }
+    
+    /**
+     * Finds the id of a response in a fragment without parsing it. The Engine
+     * writes the id before the result, so the first "id" key is taken.
+     * @param fragment Fragment of the response.
+     * @return Id of the response, or -1 if none was found.
+     */
+    private static int findResponseId(ByteBuffer fragment) {
+        var key = "\"id\":".getBytes(StandardCharsets.US_ASCII);
+        int end = fragment.limit();
+        
+        for (int i = fragment.position(); i <= end - key.length; i++) {
+            int matched = 0;
+            
+            while (matched < key.length && fragment.get(i + matched) == key[matched]) {
+                matched++;
+            }
+            
+            if (matched < key.length || (i > 0 && fragment.get(i - 1) == '\\')) {
+                continue; // Not a match or an escaped quote inside a string value.
+            }
+            
+            int id = 0;
+            int digits = 0;
+            int start = i + key.length;
+            
+            while (start < end && fragment.get(start) == ' ') {
+                start++;
+            }
+            
+            for (int j = start; j < end && Character.isDigit(fragment.get(j)); j++, digits++) {
+                id = id * 10 + (fragment.get(j) - '0');
+            }
+            
+            return digits > 0 ? id : -1;
+        }
+        
+        return -1;
+    }
+    
+    /**
+     * Wraps the remaining bytes of a buffer in a stream without copying them if possible.
+     * @param buffer Buffer to read.
+     * @return Stream over the remaining bytes.
+     */
+    private static InputStream toInputStream(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            return new ByteArrayInputStream(buffer.array(), buffer.arrayOffset() + buffer.position(), 
+                    buffer.remaining());
+        }
+        
+        var bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new ByteArrayInputStream(bytes);
     }
 
     @Override
     public void onClose(int code, String reason, boolean remote) {
         // The codes are documented in class org.java_websocket.framing.CloseFrame
         onResponseReceived("Connection closed by " + (remote ? "remote peer." : "us.") 
-                + "\nCode: " + code + (reason.isBlank() ? "" : "\nReason: " + reason));
+                + "\nCode: " + code + (reason == null || reason.isBlank() ? "" : "\nReason: " + reason));
+        
+        _openFuture.completeExceptionally(new IOException("Connection closed before it opened."));
+        
+        var ex = new IOException("Connection closed before a response was received.");
+        
+        if (_lanes != null) {
+            _lanes.failQueued(ex);
+        }
+        
+        _pendingCalls.values().forEach(pending -> pending.future.completeExceptionally(ex));
+        _pendingCalls.clear();
+        _sentCalls.clear();
+        _handleRegistry.clear();
+        _textCaches.clear();
     }
 
     @Override
     public void onError(Exception ex) {
+        _openFuture.completeExceptionally(ex);
         onResponseReceived("Error: " + ex.getMessage());
         ex.printStackTrace(System.out);
     }
+    
+    /**
+     * Holds the future of a request that is waiting for its response.
+     */
+    private static class PendingCall {
+        
+        private final int id;
+        private final String method;
+        private final int handle;
+        private final Consumer<Utf8JsonReader> decoder; // Null unless decoded from bytes.
+        private final CompletableFuture<JSONObject> future = new CompletableFuture<>();
+        private volatile long sentTime;
+        private volatile long sendSequence;
+        
+        private PendingCall(int id, String method, int handle, Consumer<Utf8JsonReader> decoder) {
+            this.id = id;
+            this.method = method;
+            this.handle = handle;
+            this.decoder = decoder;
+        }
+    }
 }
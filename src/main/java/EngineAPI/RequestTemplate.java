@@ -0,0 +1,383 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package EngineAPI;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * RequestTemplate.java (UTF-8)
+ * A JSON-RPC request that is compiled once into UTF-8 byte segments and
+ * placeholders, so sending it many times needs no parsing or formatting. A
+ * placeholder like {{name}} stands for a complete JSON value, and {{id}} and
+ * {{handle}} are filled in by the client. For example:
+ * {"jsonrpc":"2.0","id":{{id}},"method":"GetField","handle":{{handle}},"params":[{{field}}]}
+ * Arguments are written straight into a reusable buffer, where numbers and
+ * strings are encoded without creating intermediate strings.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public class RequestTemplate {
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{\\{([A-Za-z0-9_]+)}}");
+    private static final String ID = "id";
+    private static final String HANDLE = "handle";
+    private static final int ID_INDEX = 0;
+    private static final int HANDLE_INDEX = 1;
+    private final String _method;
+    private final byte[][] _literals; // Literal before each placeholder, and the one after the last.
+    private final int[] _placeholders; // Index of the argument of each placeholder.
+    private final List<String> _names;
+
+    private RequestTemplate(String method, byte[][] literals, int[] placeholders, List<String> names) {
+        _method = method;
+        _literals = literals;
+        _placeholders = placeholders;
+        _names = names;
+    }
+
+    /**
+     * Compiles a template, which is checked by rendering it with 0 for every
+     * placeholder and parsing the result.
+     * @param template JSON-RPC request with placeholders.
+     * @return Compiled template.
+     * @throws IllegalArgumentException If the template is not valid JSON, has no
+     * {{id}} placeholder, or has no method.
+     */
+    public static RequestTemplate compile(String template) {
+        var names = new ArrayList<String>(List.of(ID, HANDLE));
+        var literals = new ArrayList<byte[]>();
+        var placeholders = new ArrayList<Integer>();
+        var matcher = PLACEHOLDER.matcher(template);
+        int literalStart = 0;
+
+        while (matcher.find()) {
+            var name = matcher.group(1);
+
+            if (!names.contains(name)) {
+                names.add(name);
+            }
+
+            literals.add(template.substring(literalStart, matcher.start()).getBytes(StandardCharsets.UTF_8));
+            placeholders.add(names.indexOf(name));
+            literalStart = matcher.end();
+        }
+
+        literals.add(template.substring(literalStart).getBytes(StandardCharsets.UTF_8));
+
+        if (!placeholders.contains(ID_INDEX)) {
+            throw new IllegalArgumentException("Template has no {{id}} placeholder.");
+        }
+
+        JSONObject sample;
+
+        try {
+            sample = new JSONObject(PLACEHOLDER.matcher(template).replaceAll("0"));
+        } catch (JSONException ex) {
+            throw new IllegalArgumentException("Template is not valid JSON: " + ex.getMessage(), ex);
+        }
+
+        if (!sample.has("method")) {
+            throw new IllegalArgumentException("Template has no method.");
+        }
+
+        return new RequestTemplate(sample.getString("method"), literals.toArray(new byte[0][]),
+                placeholders.stream().mapToInt(Integer::intValue).toArray(), List.copyOf(names));
+    }
+
+    public String getMethod() {
+        return _method;
+    }
+
+    /**
+     * Gets the index of an argument to set it without looking up its name on every send.
+     * @param name Name of the placeholder.
+     * @return Index of the argument.
+     * @throws IllegalArgumentException If the template has no such placeholder.
+     */
+    public int indexOf(String name) {
+        int index = _names.indexOf(name);
+
+        if (index < 0 || index == ID_INDEX || index == HANDLE_INDEX) {
+            throw new IllegalArgumentException("Template has no argument named " + name + ".");
+        }
+
+        return index;
+    }
+
+    /**
+     * Creates a holder for the arguments of this template, which can be reused
+     * for every send from the same thread.
+     * @return Arguments with every value set to null.
+     */
+    public Arguments newArguments() {
+        return new Arguments(_names.size());
+    }
+
+    /**
+     * Renders the request into a buffer, which grows if it is too small.
+     * @param buffer Buffer to render into, which is cleared first.
+     * @param id Id of the request.
+     * @param handle Handle the method is called on.
+     * @param arguments Values of the other placeholders, which can be null if there are none.
+     * @return Buffer with the request from position 0 to its limit, which is
+     * a new one if the given buffer was too small.
+     */
+    ByteBuffer render(ByteBuffer buffer, int id, int handle, Arguments arguments) {
+        var target = new Target(buffer);
+
+        for (int i = 0; i < _placeholders.length; i++) {
+            target.put(_literals[i]);
+
+            int index = _placeholders[i];
+
+            if (index == ID_INDEX) {
+                target.putLong(id);
+            } else if (index == HANDLE_INDEX) {
+                target.putLong(handle);
+            } else if (arguments == null) {
+                target.putAscii("null");
+            } else {
+                arguments.write(index, target);
+            }
+        }
+
+        target.put(_literals[_literals.length - 1]);
+        return target.buffer.flip();
+    }
+
+    /**
+     * The values of the placeholders of a template. Numbers are kept unboxed.
+     */
+    public static class Arguments {
+
+        private static final byte NULL = 0;
+        private static final byte LONG = 1;
+        private static final byte DOUBLE = 2;
+        private static final byte BOOLEAN = 3;
+        private static final byte STRING = 4;
+        private static final byte JSON = 5;
+        private final byte[] _types;
+        private final long[] _numbers;
+        private final Object[] _values;
+
+        private Arguments(int size) {
+            _types = new byte[size];
+            _numbers = new long[size];
+            _values = new Object[size];
+        }
+
+        public Arguments set(int index, long value) {
+            _types[index] = LONG;
+            _numbers[index] = value;
+            return this;
+        }
+
+        public Arguments set(int index, double value) {
+            _types[index] = DOUBLE;
+            _numbers[index] = Double.doubleToRawLongBits(value);
+            return this;
+        }
+
+        public Arguments set(int index, boolean value) {
+            _types[index] = BOOLEAN;
+            _numbers[index] = value ? 1 : 0;
+            return this;
+        }
+
+        /**
+         * Sets a string, which is written as a quoted and escaped JSON string.
+         * @param index Index of the argument.
+         * @param value String to write, or null to write null.
+         * @return These arguments.
+         */
+        public Arguments set(int index, String value) {
+            _types[index] = value == null ? NULL : STRING;
+            _values[index] = value;
+            return this;
+        }
+
+        /**
+         * Sets a JSON value that is written as is, for example, an array of pages
+         * or properties. Encode it once and reuse it to keep sends free of allocations.
+         * @param index Index of the argument.
+         * @param utf8Json UTF-8 bytes of a JSON value.
+         * @return These arguments.
+         */
+        public Arguments setJson(int index, byte[] utf8Json) {
+            _types[index] = utf8Json == null ? NULL : JSON;
+            _values[index] = utf8Json;
+            return this;
+        }
+
+        private void write(int index, Target target) {
+            switch (_types[index]) {
+                case LONG:
+                    target.putLong(_numbers[index]);
+                    break;
+                case DOUBLE:
+                    double value = Double.longBitsToDouble(_numbers[index]);
+
+                    if (value == (long) value) {
+                        target.putLong((long) value);
+                    } else if (Double.isFinite(value)) {
+                        target.putAscii(Double.toString(value));
+                    } else {
+                        target.putAscii("null"); // JSON cannot express NaN or infinity.
+                    }
+
+                    break;
+                case BOOLEAN:
+                    target.putAscii(_numbers[index] == 1 ? "true" : "false");
+                    break;
+                case STRING:
+                    target.putString((String) _values[index]);
+                    break;
+                case JSON:
+                    target.put((byte[]) _values[index]);
+                    break;
+                default:
+                    target.putAscii("null");
+            }
+        }
+    }
+
+    /**
+     * Writes into a buffer and replaces it with a larger one when it is full.
+     */
+    private static class Target {
+
+        private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+        private ByteBuffer buffer;
+
+        Target(ByteBuffer buffer) {
+            this.buffer = buffer.clear();
+        }
+
+        void put(byte[] bytes) {
+            ensureRemaining(bytes.length);
+            buffer.put(bytes);
+        }
+
+        void putAscii(String text) {
+            ensureRemaining(text.length());
+
+            for (int i = 0; i < text.length(); i++) {
+                buffer.put((byte) text.charAt(i));
+            }
+        }
+
+        void putLong(long value) {
+            ensureRemaining(20);
+
+            if (value == Long.MIN_VALUE) {
+                putAscii(Long.toString(value));
+                return;
+            }
+
+            if (value < 0) {
+                buffer.put((byte) '-');
+                value = -value;
+            }
+
+            int start = buffer.position();
+
+            do {
+                buffer.put((byte) ('0' + value % 10));
+                value /= 10;
+            } while (value > 0);
+
+            // The digits were written from last to first.
+            for (int i = start, j = buffer.position() - 1; i < j; i++, j--) {
+                byte digit = buffer.get(i);
+
+                buffer.put(i, buffer.get(j));
+                buffer.put(j, digit);
+            }
+        }
+
+        /**
+         * Writes a quoted JSON string encoded as UTF-8, escaping what JSON requires.
+         * @param text String to write.
+         */
+        void putString(String text) {
+            ensureRemaining(text.length() * 6 + 2); // Worst case of \\u escapes.
+            buffer.put((byte) '"');
+
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+
+                if (c == '"' || c == '\\') {
+                    buffer.put((byte) '\\').put((byte) c);
+                } else if (c < 0x20) {
+                    putEscape(c);
+                } else if (c < 0x80) {
+                    buffer.put((byte) c);
+                } else if (c < 0x800) {
+                    buffer.put((byte) (0xC0 | (c >> 6))).put((byte) (0x80 | (c & 0x3F)));
+                } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                        && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, text.charAt(++i));
+
+                    buffer.put((byte) (0xF0 | (codePoint >> 18)))
+                            .put((byte) (0x80 | ((codePoint >> 12) & 0x3F)))
+                            .put((byte) (0x80 | ((codePoint >> 6) & 0x3F)))
+                            .put((byte) (0x80 | (codePoint & 0x3F)));
+                } else if (Character.isSurrogate(c)) {
+                    putEscape(c); // A lone surrogate has no UTF-8 encoding.
+                } else {
+                    buffer.put((byte) (0xE0 | (c >> 12)))
+                            .put((byte) (0x80 | ((c >> 6) & 0x3F)))
+                            .put((byte) (0x80 | (c & 0x3F)));
+                }
+            }
+
+            buffer.put((byte) '"');
+        }
+
+        private void putEscape(char c) {
+            buffer.put((byte) '\\').put((byte) 'u')
+                    .put(HEX[c >> 12]).put(HEX[(c >> 8) & 0xF])
+                    .put(HEX[(c >> 4) & 0xF]).put(HEX[c & 0xF]);
+        }
+
+        private void ensureRemaining(int needed) {
+            if (buffer.remaining() >= needed) {
+                return;
+            }
+
+            int capacity = Math.max(buffer.capacity() * 2, buffer.position() + needed);
+            var larger = ByteBuffer.allocate(capacity);
+
+            buffer = larger.put(buffer.flip());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return _method + " " + Arrays.toString(_names.subList(2, _names.size()).toArray());
+    }
+}
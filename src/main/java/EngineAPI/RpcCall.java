@@ -0,0 +1,91 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package EngineAPI;
+
+import java.util.Optional;
+import org.json.JSONArray;
+
+/**
+ * RpcCall.java (UTF-8)
+ * Describes a single JSON-RPC call that is part of a batch sent with
+ * {@link QlikWebSocketClient#batch(java.util.List) batch}. A call either targets
+ * a known handle or the handle returned by another call in the same batch.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public class RpcCall {
+
+    private final String _key;
+    private final String _method;
+    private final int _handle;
+    private final String _handleFrom;
+    private final Object _params;
+
+    /**
+     * Constructions a new {@see RpcCall} instance that targets a known handle.
+     * @param key Unique key of the call used for the aggregated results.
+     * @param method Engine method to call, for example, GetObject.
+     * @param handle Handle of the object the method is called on, for example, -1 for Global.
+     * @param params Parameters as a {@see JSONArray} or {@see org.json.JSONObject}.
+     */
+    public RpcCall(String key, String method, int handle, Object params) {
+        _key = key;
+        _method = method;
+        _handle = handle;
+        _handleFrom = null;
+        _params = params == null ? new JSONArray() : params;
+    }
+
+    /**
+     * Constructions a new {@see RpcCall} instance that targets the handle returned
+     * in qReturn by another call of the same batch.
+     * @param key Unique key of the call used for the aggregated results.
+     * @param method Engine method to call, for example, GetLayout.
+     * @param handleFrom Key of the call that returns the handle to use.
+     * @param params Parameters as a {@see JSONArray} or {@see org.json.JSONObject}.
+     */
+    public RpcCall(String key, String method, String handleFrom, Object params) {
+        _key = key;
+        _method = method;
+        _handle = 0;
+        _handleFrom = handleFrom;
+        _params = params == null ? new JSONArray() : params;
+    }
+
+    public String getKey() {
+        return _key;
+    }
+
+    public String getMethod() {
+        return _method;
+    }
+
+    public int getHandle() {
+        return _handle;
+    }
+
+    public Optional<String> getHandleFrom() {
+        return Optional.ofNullable(_handleFrom);
+    }
+
+    public Object getParams() {
+        return _params;
+    }
+}
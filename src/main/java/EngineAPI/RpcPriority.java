@@ -0,0 +1,55 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package EngineAPI;
+
+import java.util.Set;
+
+/**
+ * RpcPriority.java (UTF-8)
+ * The priority class of a call when {@see PriorityLanes} are enabled on a
+ * {@see QlikWebSocketClient}.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public enum RpcPriority {
+
+    /**
+     * Calls a user is waiting for, like GetLayout or SelectValues.
+     */
+    INTERACTIVE,
+
+    /**
+     * Calls that read data in bulk, like the pages of an extract.
+     */
+    BULK;
+
+    private static final Set<String> BULK_METHODS = Set.of("GetHyperCubeData", "GetHyperCubeReducedData",
+            "GetHyperCubePivotData", "GetHyperCubeStackData", "GetHyperCubeContinuousData", "GetTableData");
+
+    /**
+     * Gets the default priority of an Engine method, which is bulk for the
+     * methods that page through data and interactive for the rest.
+     * @param method Engine method, for example, GetHyperCubeData.
+     * @return Priority of the method.
+     */
+    public static RpcPriority forMethod(String method) {
+        return BULK_METHODS.contains(method) ? BULK : INTERACTIVE;
+    }
+}
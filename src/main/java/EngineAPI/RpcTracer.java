@@ -0,0 +1,277 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package EngineAPI;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * RpcTracer.java (UTF-8)
+ * Records when each JSON-RPC call was sent, when the first and last frame of its
+ * response arrived, and when the listeners were done with it. The latest traces
+ * are kept in a lock-free ring buffer, and can be summarized per method and handle
+ * or exported as OpenTelemetry spans in OTLP/JSON format. The phases show whether
+ * time is spent waiting on the Engine and network, receiving the response, or in
+ * our own listeners.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public class RpcTracer {
+
+    private final AtomicReferenceArray<Trace> _traces;
+    private final AtomicLong _next = new AtomicLong();
+    private final int _mask;
+    private final long _epochOffsetNanos; // Converts System.nanoTime to Unix time.
+    private final SecureRandom _random = new SecureRandom();
+
+    /**
+     * Constructions a new {@see RpcTracer} instance.
+     * @param capacity Number of traces to keep, which is rounded up to a power of two.
+     */
+    public RpcTracer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+
+        _traces = new AtomicReferenceArray<>(size);
+        _mask = size - 1;
+        _epochOffsetNanos = System.currentTimeMillis() * 1_000_000L - System.nanoTime();
+    }
+
+    /**
+     * Adds a trace to the ring buffer, which overwrites the oldest one when full.
+     * @param trace Trace of a completed call.
+     */
+    void record(Trace trace) {
+        _traces.set((int) (_next.getAndIncrement() & _mask), trace);
+    }
+
+    /**
+     * Gets the number of calls traced so far, including those overwritten already.
+     * @return Number of traced calls.
+     */
+    public long getTracedCount() {
+        return _next.get();
+    }
+
+    /**
+     * Gets a copy of the traces in the ring buffer from oldest to newest.
+     * @return Traces that are kept.
+     */
+    public List<Trace> getTraces() {
+        long end = _next.get();
+        long start = Math.max(0, end - _traces.length());
+        var traces = new ArrayList<Trace>((int) (end - start));
+
+        for (long i = start; i < end; i++) {
+            var trace = _traces.get((int) (i & _mask));
+
+            if (trace != null) {
+                traces.add(trace);
+            }
+        }
+
+        return traces;
+    }
+
+    /**
+     * Summarizes the kept traces per method and handle with the count and the
+     * 50th, 95th and maximum latency in milliseconds of each phase.
+     * @return Summary as JSON.
+     */
+    public JSONObject toJson() {
+        var groups = new TreeMap<String, List<Trace>>();
+
+        getTraces().forEach(trace -> groups.computeIfAbsent(trace.method + "#" + trace.handle,
+                key -> new ArrayList<>()).add(trace));
+
+        var methods = new JSONArray();
+
+        for (Map.Entry<String, List<Trace>> group : groups.entrySet()) {
+            var traces = group.getValue();
+            var first = traces.get(0);
+
+            methods.put(new JSONObject()
+                    .put("method", first.method)
+                    .put("handle", first.handle)
+                    .put("count", traces.size())
+                    .put("errors", traces.stream().filter(trace -> trace.isError).count())
+                    .put("engineAndNetworkMs", summarize(traces, Phase.WAIT))
+                    .put("receiveMs", summarize(traces, Phase.RECEIVE))
+                    .put("listenersMs", summarize(traces, Phase.LISTENERS))
+                    .put("totalMs", summarize(traces, Phase.TOTAL)));
+        }
+
+        return new JSONObject()
+                .put("traced", getTracedCount())
+                .put("kept", groups.values().stream().mapToInt(List::size).sum())
+                .put("methods", methods);
+    }
+
+    /**
+     * Exports the kept traces as OpenTelemetry client spans in OTLP/JSON format,
+     * which can be posted to the /v1/traces endpoint of a collector.
+     * @param serviceName Name of the service the spans belong to.
+     * @return Spans as JSON.
+     */
+    public JSONObject toOpenTelemetryJson(String serviceName) {
+        var spans = new JSONArray();
+
+        for (var trace : getTraces()) {
+            spans.put(new JSONObject()
+                    .put("traceId", randomHex(16))
+                    .put("spanId", randomHex(8))
+                    .put("name", trace.method)
+                    .put("kind", 3) // SPAN_KIND_CLIENT
+                    .put("startTimeUnixNano", Long.toString(toUnixNanos(trace.sent)))
+                    .put("endTimeUnixNano", Long.toString(toUnixNanos(trace.dispatched)))
+                    .put("attributes", new JSONArray()
+                            .put(attribute("rpc.system", "jsonrpc"))
+                            .put(attribute("rpc.method", trace.method))
+                            .put(attribute("rpc.jsonrpc.request_id", Integer.toString(trace.id)))
+                            .put(attribute("qlik.handle", Integer.toString(trace.handle))))
+                    .put("events", new JSONArray()
+                            .put(event("first_byte", trace.firstByte))
+                            .put(event("last_fragment", trace.lastFragment)))
+                    .put("status", new JSONObject().put("code", trace.isError ? 2 : 1)));
+        }
+
+        var resource = new JSONObject().put("attributes",
+                new JSONArray().put(attribute("service.name", serviceName)));
+        var scopeSpans = new JSONObject()
+                .put("scope", new JSONObject().put("name", RpcTracer.class.getName()))
+                .put("spans", spans);
+
+        return new JSONObject().put("resourceSpans", new JSONArray().put(new JSONObject()
+                .put("resource", resource)
+                .put("scopeSpans", new JSONArray().put(scopeSpans))));
+    }
+
+    private JSONObject summarize(List<Trace> traces, Phase phase) {
+        var nanos = traces.stream().mapToLong(trace -> trace.getDuration(phase)).toArray();
+
+        Arrays.sort(nanos);
+
+        return new JSONObject()
+                .put("p50", nanos[(int) Math.ceil(nanos.length * 0.50) - 1] / 1e6)
+                .put("p95", nanos[(int) Math.ceil(nanos.length * 0.95) - 1] / 1e6)
+                .put("max", nanos[nanos.length - 1] / 1e6);
+    }
+
+    private long toUnixNanos(long nanoTime) {
+        return nanoTime + _epochOffsetNanos;
+    }
+
+    private JSONObject event(String name, long nanoTime) {
+        return new JSONObject().put("name", name).put("timeUnixNano", Long.toString(toUnixNanos(nanoTime)));
+    }
+
+    private static JSONObject attribute(String key, String value) {
+        return new JSONObject().put("key", key).put("value", new JSONObject().put("stringValue", value));
+    }
+
+    private String randomHex(int bytes) {
+        var buffer = new byte[bytes];
+        var sb = new StringBuilder(bytes * 2);
+
+        _random.nextBytes(buffer);
+
+        for (var b : buffer) {
+            sb.append(String.format("%02x", b));
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * The phases of a call that are timed.
+     */
+    public enum Phase {
+        WAIT, RECEIVE, LISTENERS, TOTAL
+    }
+
+    /**
+     * The timestamps of one call in System.nanoTime units.
+     */
+    public static class Trace {
+
+        private final int id;
+        private final String method;
+        private final int handle;
+        private final long sent;
+        private final long firstByte;
+        private final long lastFragment;
+        private final long dispatched;
+        private final boolean isError;
+
+        Trace(int id, String method, int handle, long sent, long firstByte, long lastFragment,
+                long dispatched, boolean isError) {
+
+            this.id = id;
+            this.method = method;
+            this.handle = handle;
+            this.sent = sent;
+            this.firstByte = firstByte;
+            this.lastFragment = lastFragment;
+            this.dispatched = dispatched;
+            this.isError = isError;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public int getHandle() {
+            return handle;
+        }
+
+        public boolean isError() {
+            return isError;
+        }
+
+        /**
+         * Gets the duration of a phase of the call.
+         * @param phase Phase to measure.
+         * @return Duration in nanoseconds.
+         */
+        public long getDuration(Phase phase) {
+            switch (phase) {
+                case WAIT:
+                    return firstByte - sent;
+                case RECEIVE:
+                    return lastFragment - firstByte;
+                case LISTENERS:
+                    return dispatched - lastFragment;
+                default:
+                    return dispatched - sent;
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package EngineAPI;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * SelectionSet.java (UTF-8)
+ * The selections of one what-if query run by a {@see WhatIfRunner}, which are
+ * either values selected field by field in the order they were added, or a
+ * bookmark of the app that is applied with a single call.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public class SelectionSet {
+
+    private final String _bookmarkId;
+    private final List<FieldSelection> _fields = new ArrayList<>();
+
+    /**
+     * Constructions a new {@see SelectionSet} instance without selections, which
+     * runs the query on the whole app.
+     */
+    public SelectionSet() {
+        _bookmarkId = null;
+    }
+
+    private SelectionSet(String bookmarkId) {
+        _bookmarkId = bookmarkId;
+    }
+
+    /**
+     * Creates a set whose selections are those of a bookmark.
+     * @param bookmarkId Id of the bookmark.
+     * @return A new set that applies the bookmark.
+     */
+    public static SelectionSet ofBookmark(String bookmarkId) {
+        return new SelectionSet(bookmarkId);
+    }
+
+    /**
+     * Selects text values in a field, which replaces any values added for it before.
+     * @param field Name of the field.
+     * @param values Values to select.
+     * @return This set for chaining.
+     * @throws IllegalStateException If the set applies a bookmark.
+     */
+    public SelectionSet select(String field, String... values) {
+        var fieldValues = new JSONArray();
+
+        for (var value : values) {
+            fieldValues.put(new JSONObject().put("qText", value));
+        }
+
+        return select(field, fieldValues);
+    }
+
+    /**
+     * Selects numeric values in a field, which replaces any values added for it before.
+     * @param field Name of the field.
+     * @param values Values to select.
+     * @return This set for chaining.
+     * @throws IllegalStateException If the set applies a bookmark.
+     */
+    public SelectionSet select(String field, double... values) {
+        var fieldValues = new JSONArray();
+
+        for (var value : values) {
+            fieldValues.put(new JSONObject().put("qIsNumeric", true).put("qNumber", value));
+        }
+
+        return select(field, fieldValues);
+    }
+
+    private SelectionSet select(String field, JSONArray fieldValues) {
+        if (_bookmarkId != null) {
+            throw new IllegalStateException("A set that applies a bookmark has no other selections.");
+        }
+
+        _fields.removeIf(selection -> selection.field.equals(field));
+        _fields.add(new FieldSelection(field, fieldValues));
+        return this;
+    }
+
+    boolean isBookmark() {
+        return _bookmarkId != null;
+    }
+
+    String getBookmarkId() {
+        return _bookmarkId;
+    }
+
+    List<FieldSelection> getFields() {
+        return Collections.unmodifiableList(_fields);
+    }
+
+    /**
+     * The values selected in a field as an array of FieldValue objects for SelectValues.
+     */
+    static class FieldSelection {
+
+        final String field;
+        final JSONArray values;
+
+        FieldSelection(String field, JSONArray values) {
+            this.field = field;
+            this.values = values;
+        }
+
+        boolean isSameAs(FieldSelection other) {
+            return field.equals(other.field) && values.similar(other.values);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package EngineAPI;
+
+import java.net.URI;
+import java.time.Duration;
+
+/**
+ * Session.java (UTF-8)
+ * An open connection to the Qlik Engine as returned by
+ * {@link QlikWebSocketClient#connectAsync(java.time.Duration) connectAsync}.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public class Session implements AutoCloseable {
+
+    private final QlikWebSocketClient _client;
+    private final Duration _connectTime;
+
+    /**
+     * Constructions a new {@see Session} instance for an open connection.
+     * @param client Client that is connected.
+     * @param connectTime Time it took to open the connection.
+     */
+    Session(QlikWebSocketClient client, Duration connectTime) {
+        _client = client;
+        _connectTime = connectTime;
+    }
+
+    public QlikWebSocketClient getClient() {
+        return _client;
+    }
+
+    public URI getURI() {
+        return _client.getURI();
+    }
+
+    public Duration getConnectTime() {
+        return _connectTime;
+    }
+
+    public boolean isOpen() {
+        return _client.isOpen();
+    }
+
+    /**
+     * Closes the connection without waiting for the closing handshake.
+     */
+    @Override
+    public void close() {
+        _client.close();
+    }
+}
@@ -0,0 +1,361 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package EngineAPI;
+
+import Shared.Interfaces.AuthCertificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * ShardedEngineClient.java (UTF-8)
+ * Spreads the calls for one app over several sessions with the Engine, so a
+ * large response on one WebSocket does not hold up the calls queued behind it
+ * on the same TCP stream. The app is opened on every shard, and handles only
+ * exist in the session that returned them, so calls on a handle always go to
+ * its shard, while calls on the app or Global go to the shard with the fewest
+ * pending calls. A shard whose oldest pending call has waited longer than a
+ * stall threshold, for example, while a large extract is read, is only used if
+ * every shard is stalled. Objects got through this client are also placed on
+ * the least busy shard, so large extracts and small interactive calls end up
+ * on different sockets. Selections are state of a session, which the other
+ * shards do not see. So calls on the app that change them, like SelectAssociations,
+ * ClearAll, ApplyBookmark, or GetField to select in a field, go to the first shard,
+ * and so do later calls on the app and new objects. Objects got before then keep
+ * their shard without the selections, so sharding pays off most for reads
+ * without selections, like extracts.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public class ShardedEngineClient implements AutoCloseable {
+
+    private static final Duration DEFAULT_STALL_THRESHOLD = Duration.ofMillis(250);
+    private static final int STATE_SHARD = 0;
+    private static final Set<String> STATE_METHODS = Set.of("ClearAll", "LockAll", "UnlockAll", 
+            "Back", "Forward", "ApplyBookmark", "GetField");
+    private final List<Session> _sessions;
+    private final long _stallNanos;
+    private final EngineHandle[] _docs;
+    private final LongAdder[] _routed;
+    private final AtomicInteger _nextShard = new AtomicInteger();
+    private volatile boolean _hasSelections;
+
+    /**
+     * Constructions a new {@see ShardedEngineClient} instance over open sessions
+     * to the same Engine.
+     * @param sessions Sessions used as shards.
+     * @throws IllegalArgumentException If no session is given.
+     */
+    public ShardedEngineClient(List<Session> sessions) {
+        this(sessions, DEFAULT_STALL_THRESHOLD);
+    }
+
+    /**
+     * Constructions a new {@see ShardedEngineClient} instance over open sessions
+     * to the same Engine.
+     * @param sessions Sessions used as shards.
+     * @param stallThreshold Time the oldest pending call of a shard can wait before
+     * the shard is avoided.
+     * @throws IllegalArgumentException If no session is given.
+     */
+    public ShardedEngineClient(List<Session> sessions, Duration stallThreshold) {
+        if (sessions.isEmpty()) {
+            throw new IllegalArgumentException("At least one session is needed.");
+        }
+
+        _sessions = List.copyOf(sessions);
+        _stallNanos = stallThreshold.toNanos();
+        _docs = new EngineHandle[_sessions.size()];
+        _routed = new LongAdder[_sessions.size()];
+
+        for (int i = 0; i < _routed.length; i++) {
+            _routed[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Opens several sessions to the same Engine in parallel.
+     * @param wssServerUrl WebSocket address of the Engine, for example, wss://server:4747/app/.
+     * @param qlikCert Qlik certificate used for authentication.
+     * @param shards Number of sessions.
+     * @param timeout Maximum time to wait for each connection to open.
+     * @return CompletableFuture with the client, which fails if any session fails
+     * to open. The sessions that did open are then closed.
+     * @throws IllegalArgumentException If shards is less than one.
+     * @throws Exception
+     */
+    public static CompletableFuture<ShardedEngineClient> connect(String wssServerUrl,
+            AuthCertificate qlikCert, int shards, Duration timeout) throws Exception {
+
+        return QlikWebSocketClient.connectAll(Collections.nCopies(shards, wssServerUrl), qlikCert, timeout)
+                .thenApply(ShardedEngineClient::new);
+    }
+
+    /**
+     * Opens an app on every shard.
+     * @param appId Id of the app to open.
+     * @return CompletableFuture with the handle of the document on each shard.
+     */
+    public CompletableFuture<List<EngineHandle>> openDoc(String appId) {
+        var opens = new ArrayList<CompletableFuture<EngineHandle>>(_sessions.size());
+
+        for (int i = 0; i < _sessions.size(); i++) {
+            int shard = i;
+
+            _routed[shard].increment();
+            opens.add(_sessions.get(shard).getClient().openDoc(appId).thenApply(doc -> {
+                synchronized (_docs) {
+                    _docs[shard] = doc;
+                }
+                return doc;
+            }));
+        }
+
+        return CompletableFuture.allOf(opens.toArray(new CompletableFuture<?>[0])).thenApply(opened -> {
+            var docs = new ArrayList<EngineHandle>(opens.size());
+            opens.forEach(open -> docs.add(open.join()));
+            return docs;
+        });
+    }
+
+    /**
+     * Sends a call to Global on the least busy shard.
+     * @param method Engine method to call, for example, EngineVersion.
+     * @param params Parameters as a {@see JSONArray} or {@see JSONObject}.
+     * @return CompletableFuture with the result object of the response.
+     */
+    public CompletableFuture<JSONObject> call(String method, Object params) {
+        int shard = selectShard();
+
+        _routed[shard].increment();
+        return _sessions.get(shard).getClient().call(method, -1, params);
+    }
+
+    /**
+     * Sends a call to the app on the least busy shard, or on the first shard
+     * if it changes the selections or they were changed before.
+     * @param method Engine method to call, for example, GetAppLayout.
+     * @param params Parameters as a {@see JSONArray} or {@see JSONObject}.
+     * @return CompletableFuture with the result object of the response.
+     * @throws IllegalStateException If the app was not opened with {@see #openDoc}.
+     */
+    public CompletableFuture<JSONObject> callDoc(String method, Object params) {
+        if (method.startsWith("Select") || STATE_METHODS.contains(method)) {
+            _hasSelections = true;
+        }
+
+        int shard = selectAppShard();
+
+        _routed[shard].increment();
+        return _sessions.get(shard).getClient().call(method, getDoc(shard).getHandle(), params);
+    }
+
+    /**
+     * Sends a call on a handle to the shard that returned it.
+     * @param handle Handle of the object the method is called on.
+     * @param method Engine method to call, for example, GetLayout.
+     * @param params Parameters as a {@see JSONArray} or {@see JSONObject}.
+     * @return CompletableFuture with the result object of the response.
+     * @throws IllegalArgumentException If the handle is not from a shard of this client.
+     */
+    public CompletableFuture<JSONObject> call(EngineHandle handle, String method, Object params) {
+        int shard = getShard(handle);
+
+        _routed[shard].increment();
+        return _sessions.get(shard).getClient().call(method, handle.getHandle(), params);
+    }
+
+    /**
+     * Gets an object of the app on the least busy shard, or on the first shard
+     * once the selections were changed, where the calls on the returned handle
+     * are sent from then on.
+     * @param objectId Id of the object to get.
+     * @return CompletableFuture with the handle of the object.
+     * @throws IllegalStateException If the app was not opened with {@see #openDoc}.
+     */
+    public CompletableFuture<EngineHandle> getObject(String objectId) {
+        int shard = selectAppShard();
+
+        _routed[shard].increment();
+        return _sessions.get(shard).getClient().getObject(getDoc(shard), objectId);
+    }
+
+    /**
+     * Creates a session object of the app on the least busy shard, or on the
+     * first shard once the selections were changed, where the calls on the 
+     * returned handle are sent from then on.
+     * @param properties Properties of the object, which must include qInfo.qType.
+     * @return CompletableFuture with the handle of the session object.
+     * @throws IllegalStateException If the app was not opened with {@see #openDoc}.
+     */
+    public CompletableFuture<EngineHandle> createSessionObject(JSONObject properties) {
+        int shard = selectAppShard();
+
+        _routed[shard].increment();
+        return _sessions.get(shard).getClient().createSessionObject(getDoc(shard), properties);
+    }
+
+    /**
+     * Gets a page of hypercube data from the shard of the object.
+     * @param object Handle of the object with the hypercube.
+     * @param path Path to the hypercube definition, for example, /qHyperCubeDef.
+     * @param top First row of the page.
+     * @param left First column of the page.
+     * @param width Number of columns of the page.
+     * @param height Number of rows of the page.
+     * @return CompletableFuture with the page.
+     * @throws IllegalArgumentException If the handle is not from a shard of this client.
+     */
+    public CompletableFuture<HyperCubePage> getHyperCubeData(EngineHandle object, String path,
+            int top, int left, int width, int height) {
+
+        int shard = getShard(object);
+
+        _routed[shard].increment();
+        return _sessions.get(shard).getClient().getHyperCubeData(object, path, top, left, width, height);
+    }
+
+    /**
+     * Gets the client of the shard that returned a handle, for calls this class
+     * does not wrap.
+     * @param handle Handle returned by a shard of this client.
+     * @return The client of the shard.
+     * @throws IllegalArgumentException If the handle is not from a shard of this client.
+     */
+    public QlikWebSocketClient getClient(EngineHandle handle) {
+        return _sessions.get(getShard(handle)).getClient();
+    }
+
+    /**
+     * Gets the client of the least busy shard, for calls this class does not wrap.
+     * @return The client with the fewest pending calls.
+     * @throws IllegalStateException If every session is closed.
+     */
+    public QlikWebSocketClient getLeastBusyClient() {
+        return _sessions.get(selectShard()).getClient();
+    }
+
+    /**
+     * Gets the number of pending and routed calls of each shard.
+     * @return Metrics of the shards as JSON.
+     */
+    public JSONObject getStats() {
+        var shards = new JSONArray();
+
+        for (int i = 0; i < _sessions.size(); i++) {
+            var session = _sessions.get(i);
+
+            shards.put(new JSONObject()
+                    .put("open", session.isOpen())
+                    .put("pending", session.getClient().getPendingCount())
+                    .put("pendingAgeMillis", session.getClient().getPendingAgeNanos() / 1_000_000)
+                    .put("routed", _routed[i].sum()));
+        }
+
+        return new JSONObject().put("shards", shards);
+    }
+
+    /**
+     * Closes every session.
+     */
+    @Override
+    public void close() {
+        _sessions.forEach(Session::close);
+    }
+
+    /**
+     * Picks the shard for a call on the app, which is the first shard once the
+     * selections were changed, since only its session has them.
+     */
+    private int selectAppShard() {
+        return _hasSelections ? STATE_SHARD : selectShard();
+    }
+
+    /**
+     * Picks the open shard with the fewest pending calls, preferring shards that
+     * are not stalled. The scan starts at a different shard each time, so idle
+     * shards take turns.
+     */
+    private int selectShard() {
+        int count = _sessions.size();
+        int start = Math.floorMod(_nextShard.getAndIncrement(), count);
+        int best = -1;
+        boolean bestStalled = true;
+        int bestDepth = Integer.MAX_VALUE;
+
+        for (int i = 0; i < count; i++) {
+            int shard = (start + i) % count;
+            var session = _sessions.get(shard);
+
+            if (!session.isOpen()) {
+                continue;
+            }
+
+            var client = session.getClient();
+            int depth = client.getPendingCount();
+            boolean stalled = depth > 0 && client.getPendingAgeNanos() > _stallNanos;
+
+            if ((bestStalled && !stalled) || (stalled == bestStalled && depth < bestDepth)) {
+                best = shard;
+                bestStalled = stalled;
+                bestDepth = depth;
+
+                if (depth == 0) {
+                    break;
+                }
+            }
+        }
+
+        if (best < 0) {
+            throw new IllegalStateException("Every session of the client is closed.");
+        }
+
+        return best;
+    }
+
+    private int getShard(EngineHandle handle) {
+        var client = handle.getRegistry().getClient();
+
+        for (int i = 0; i < _sessions.size(); i++) {
+            if (_sessions.get(i).getClient() == client) {
+                return i;
+            }
+        }
+
+        throw new IllegalArgumentException("Handle " + handle.getHandle() + " is not from this client.");
+    }
+
+    private EngineHandle getDoc(int shard) {
+        synchronized (_docs) {
+            if (_docs[shard] == null) {
+                throw new IllegalStateException("The app was not opened on this client.");
+            }
+
+            return _docs[shard];
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package EngineAPI;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import org.json.JSONObject;
+
+/**
+ * TextInternCache.java (UTF-8)
+ * A bounded cache of the texts of one field, which is looked up with the UTF-8
+ * bytes of a text, so a hit returns the same String instance without decoding
+ * the bytes or allocating anything. Each text can go in one of two slots picked
+ * by its hash, and a miss replaces the older of the two, so the cache never
+ * grows beyond its capacity. Lookups are lock-free and can run on any thread.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public class TextInternCache {
+
+    private static final int MAX_TEXT_BYTES = 256; // Longer texts rarely repeat.
+    private final AtomicReferenceArray<Entry> _slots;
+    private final int _mask;
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+
+    /**
+     * Constructions a new {@see TextInternCache} instance.
+     * @param capacity Maximum number of texts, which is rounded up to a power of two.
+     */
+    public TextInternCache(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+
+        _slots = new AtomicReferenceArray<>(size);
+        _mask = size - 1;
+    }
+
+    /**
+     * Gets the text of a range of UTF-8 bytes from the cache, or decodes and
+     * caches it on a miss.
+     * @param buffer Buffer with the bytes, which is not modified.
+     * @param start Position of the first byte.
+     * @param end Position after the last byte.
+     * @return Text of the bytes.
+     */
+    String intern(ByteBuffer buffer, int start, int end) {
+        int length = end - start;
+        int hash = 1;
+
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + buffer.get(i);
+        }
+
+        hash ^= hash >>> 16;
+
+        int first = hash & _mask;
+        int second = first ^ 1;
+        var entry = _slots.get(first);
+
+        if (entry != null && entry.matches(hash, buffer, start, length)) {
+            _hits.increment();
+            return entry.text;
+        }
+
+        entry = _slots.get(second);
+
+        if (entry != null && entry.matches(hash, buffer, start, length)) {
+            _hits.increment();
+            return entry.text;
+        }
+
+        _misses.increment();
+
+        var bytes = new byte[length];
+
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+
+        var text = new String(bytes, StandardCharsets.UTF_8);
+
+        if (length <= MAX_TEXT_BYTES) {
+            var older = _slots.get(first) == null ? first
+                    : _slots.get(second) == null ? second
+                    : _slots.get(first).serial < _slots.get(second).serial ? first : second;
+
+            _slots.set(older, new Entry(hash, bytes, text, _misses.sum()));
+        }
+
+        return text;
+    }
+
+    public long getHits() {
+        return _hits.sum();
+    }
+
+    public long getMisses() {
+        return _misses.sum();
+    }
+
+    /**
+     * Gets the share of lookups that were answered from the cache.
+     * @return Hit ratio between 0 and 1, which is 0 if there were no lookups.
+     */
+    public double getHitRatio() {
+        long hits = getHits();
+        long total = hits + getMisses();
+
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public JSONObject toJson() {
+        return new JSONObject()
+                .put("hits", getHits())
+                .put("misses", getMisses())
+                .put("hitRatio", getHitRatio());
+    }
+
+    /**
+     * A cached text with its UTF-8 bytes.
+     */
+    private static class Entry {
+
+        private final int hash;
+        private final byte[] bytes;
+        private final String text;
+        private final long serial; // Orders entries by age.
+
+        Entry(int hash, byte[] bytes, String text, long serial) {
+            this.hash = hash;
+            this.bytes = bytes;
+            this.text = text;
+            this.serial = serial;
+        }
+
+        boolean matches(int otherHash, ByteBuffer buffer, int start, int length) {
+            if (hash != otherHash || bytes.length != length) {
+                return false;
+            }
+
+            for (int i = 0; i < length; i++) {
+                if (bytes[i] != buffer.get(start + i)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+}
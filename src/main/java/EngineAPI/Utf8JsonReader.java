@@ -0,0 +1,395 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package EngineAPI;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.json.JSONException;
+
+/**
+ * Utf8JsonReader.java (UTF-8)
+ * A minimal pull parser that reads JSON straight from UTF-8 bytes, so values can
+ * be decoded into primitives without building a {@see org.json.JSONObject} for
+ * every cell first. Names and values are read in order with {@see #hasNext()}
+ * called once before each member or element.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+class Utf8JsonReader {
+
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    private final ByteBuffer _buffer;
+    private final int _limit;
+    private int _position;
+    private boolean _hasEscapes; // Whether the string found last has escapes.
+
+    /**
+     * Constructions a new {@see Utf8JsonReader} instance.
+     * @param buffer UTF-8 bytes from its position to its limit, which are not modified.
+     */
+    Utf8JsonReader(ByteBuffer buffer) {
+        _buffer = buffer;
+        _position = buffer.position();
+        _limit = buffer.limit();
+    }
+
+    void beginObject() {
+        expect('{');
+    }
+
+    void beginArray() {
+        expect('[');
+    }
+
+    /**
+     * Checks whether the current object or array has another member or element,
+     * and consumes the comma before it or the bracket that ends it.
+     * @return True if another member or element follows, and false if the end was reached.
+     */
+    boolean hasNext() {
+        byte next = peek();
+
+        if (next == ',') {
+            _position++;
+            return true;
+        }
+
+        if (next == '}' || next == ']') {
+            _position++;
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks whether the next value is a string.
+     * @return True if the next value is a string, and false if not.
+     */
+    boolean isNextString() {
+        return peek() == '"';
+    }
+
+    String nextName() {
+        var name = nextString();
+
+        expect(':');
+        return name;
+    }
+
+    /**
+     * Reads a name without decoding it, which must not have escapes.
+     * @param names Names to match as UTF-8 bytes.
+     * @return Index of the name that matched, or -1 if none did.
+     */
+    int nextName(byte[][] names) {
+        int index = nextString(names);
+
+        expect(':');
+        return index;
+    }
+
+    /**
+     * Reads a string value without decoding it, which must not have escapes.
+     * @param values Values to match as UTF-8 bytes.
+     * @return Index of the value that matched, or -1 if none did.
+     */
+    int nextString(byte[][] values) {
+        expect('"');
+
+        int start = _position;
+        int end = findStringEnd();
+
+        _position = end + 1;
+
+        for (int i = 0; i < values.length; i++) {
+            if (regionMatches(start, end, values[i])) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    String nextString() {
+        expect('"');
+
+        int start = _position;
+        int end = findStringEnd();
+
+        _position = end + 1;
+        return decode(start, end);
+    }
+
+    /**
+     * Reads a string through a cache, so a repeated string is not decoded again.
+     * Strings with escapes are decoded without the cache.
+     * @param cache Cache of the texts of the field being read.
+     * @return String that was read.
+     */
+    String nextString(TextInternCache cache) {
+        expect('"');
+
+        int start = _position;
+        int end = findStringEnd();
+
+        _position = end + 1;
+        return _hasEscapes ? decode(start, end) : cache.intern(_buffer, start, end);
+    }
+
+    /**
+     * Reads a number, which can also be one of the strings "NaN", "Infinity" or
+     * "-Infinity" that the Engine uses for numbers JSON cannot express. A null
+     * is read as NaN.
+     * @return Number that was read.
+     * @throws JSONException If the next value is not a number or null.
+     */
+    double nextDouble() {
+        if (isNextString()) {
+            var text = nextString();
+
+            try {
+                return Double.parseDouble(text);
+            } catch (NumberFormatException ex) {
+                return Double.NaN;
+            }
+        }
+
+        if (regionMatches(_position, Math.min(_position + NULL.length, _limit), NULL)) {
+            _position += NULL.length;
+            return Double.NaN;
+        }
+
+        int start = _position;
+        boolean isNegative = _buffer.get(_position) == '-';
+        boolean isInteger = true;
+        long value = 0;
+
+        if (isNegative) {
+            _position++;
+        }
+
+        while (_position < _limit && isNumberByte(_buffer.get(_position))) {
+            byte b = _buffer.get(_position++);
+
+            if (b >= '0' && b <= '9') {
+                value = value * 10 + (b - '0');
+            } else {
+                isInteger = false;
+            }
+        }
+
+        int length = _position - start;
+
+        if (length == (isNegative ? 1 : 0)) {
+            throw syntaxError("Expected a number");
+        }
+
+        if (isInteger && length < 18) { // Fits in a long without overflow.
+            return isNegative ? -value : value;
+        }
+
+        var ascii = new byte[length];
+
+        for (int i = 0; i < length; i++) {
+            ascii[i] = _buffer.get(start + i);
+        }
+
+        return Double.parseDouble(new String(ascii, StandardCharsets.US_ASCII));
+    }
+
+    int nextInt() {
+        double value = nextDouble();
+
+        if (value != (int) value) {
+            throw syntaxError("Expected an integer but got " + value);
+        }
+
+        return (int) value;
+    }
+
+    /**
+     * Skips the next value including everything nested in it.
+     */
+    void skipValue() {
+        byte next = peek();
+
+        if (next == '"') {
+            _position++;
+            _position = findStringEnd() + 1;
+            return;
+        }
+
+        if (next != '{' && next != '[') {
+            while (_position < _limit && !isValueEnd(_buffer.get(_position))) {
+                _position++; // Number, true, false or null.
+            }
+
+            return;
+        }
+
+        int depth = 0;
+
+        do {
+            byte b = _buffer.get(_position++);
+
+            if (b == '"') {
+                _position = findStringEnd() + 1;
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                depth--;
+            }
+        } while (depth > 0 && _position < _limit);
+    }
+
+    private byte peek() {
+        while (_position < _limit) {
+            byte b = _buffer.get(_position);
+
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                return b;
+            }
+
+            _position++;
+        }
+
+        throw syntaxError("Unexpected end of input");
+    }
+
+    private void expect(char expected) {
+        if (peek() != expected) {
+            throw syntaxError("Expected '" + expected + "'");
+        }
+
+        _position++;
+    }
+
+    /**
+     * Finds the closing quote of the string that starts at the current position.
+     * @return Position of the closing quote.
+     */
+    private int findStringEnd() {
+        _hasEscapes = false;
+
+        for (int i = _position; i < _limit; i++) {
+            byte b = _buffer.get(i);
+
+            if (b == '\\') {
+                _hasEscapes = true;
+                i++; // Skips the escaped character.
+            } else if (b == '"') {
+                return i;
+            }
+        }
+
+        throw syntaxError("Unterminated string");
+    }
+
+    private boolean regionMatches(int start, int end, byte[] expected) {
+        if (end - start != expected.length) {
+            return false;
+        }
+
+        for (int i = 0; i < expected.length; i++) {
+            if (_buffer.get(start + i) != expected[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Decodes the UTF-8 bytes of a string and its escapes.
+     * @param start Position after the opening quote.
+     * @param end Position of the closing quote.
+     * @return Decoded string.
+     */
+    private String decode(int start, int end) {
+        var sb = new StringBuilder(end - start);
+        int runStart = start;
+
+        for (int i = start; i < end; i++) {
+            if (_buffer.get(i) != '\\') {
+                continue;
+            }
+
+            sb.append(decodeRun(runStart, i));
+
+            char escaped = (char) _buffer.get(++i);
+
+            switch (escaped) {
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'u':
+                    sb.append((char) Integer.parseInt(decodeRun(i + 1, i + 5), 16));
+                    i += 4;
+                    break;
+                default:
+                    sb.append(escaped); // Quote, backslash or slash.
+            }
+
+            runStart = i + 1;
+        }
+
+        return sb.append(decodeRun(runStart, end)).toString();
+    }
+
+    private String decodeRun(int start, int end) {
+        if (_buffer.hasArray()) {
+            return new String(_buffer.array(), _buffer.arrayOffset() + start, end - start,
+                    StandardCharsets.UTF_8);
+        }
+
+        var bytes = new byte[end - start];
+
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = _buffer.get(start + i);
+        }
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isNumberByte(byte b) {
+        return (b >= '0' && b <= '9') || b == '.' || b == 'e' || b == 'E' || b == '+' || b == '-';
+    }
+
+    private static boolean isValueEnd(byte b) {
+        return b == ',' || b == '}' || b == ']' || b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    private JSONException syntaxError(String message) {
+        return new JSONException(message + " at byte " + (_position - _buffer.position()));
+    }
+}
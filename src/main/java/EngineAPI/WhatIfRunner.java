@@ -0,0 +1,292 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package EngineAPI;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * WhatIfRunner.java (UTF-8)
+ * Runs what-if queries, where each {@see SelectionSet} is selected in an app and
+ * the layouts of some objects are read, over a pool of sessions at the same time.
+ * Selections are the state of a session, so each session runs one set at a time
+ * and takes the next one when done, which makes a sweep faster with every session
+ * added. Each session remembers the selections it made, and a set that starts
+ * with the same field selections only selects the fields that differ instead of
+ * clearing everything and selecting it all again. A set can also be a bookmark,
+ * which is applied with a single call. Field handles are got once per session.
+ * Keeping selections assumes that the values of a set do not exclude the values
+ * selected in its earlier fields, which would make the Engine clear them.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public class WhatIfRunner {
+
+    private final List<Worker> _workers;
+    private final List<String> _objectIds;
+    private final AtomicBoolean _running = new AtomicBoolean();
+    private final LongAdder _sets = new LongAdder();
+    private final LongAdder _selections = new LongAdder();
+    private final LongAdder _reusedSelections = new LongAdder();
+    private final LongAdder _clears = new LongAdder();
+    private final LongAdder _bookmarks = new LongAdder();
+
+    private WhatIfRunner(List<Worker> workers, List<String> objectIds) {
+        _workers = workers;
+        _objectIds = objectIds;
+    }
+
+    /**
+     * Opens an app and its objects on every session of a pool.
+     * @param sessions Sessions that run the queries, which stay open after the runner is done.
+     * @param appId Id of the app.
+     * @param objectIds Ids of the objects whose layouts are read for each set.
+     * @return CompletableFuture with the runner once every session is ready.
+     * @throws IllegalArgumentException If no session is given.
+     */
+    public static CompletableFuture<WhatIfRunner> open(List<Session> sessions, String appId,
+            List<String> objectIds) {
+
+        if (sessions.isEmpty()) {
+            throw new IllegalArgumentException("At least one session is needed.");
+        }
+
+        var ids = List.copyOf(objectIds);
+        var opens = new ArrayList<CompletableFuture<Worker>>(sessions.size());
+
+        for (var session : sessions) {
+            var client = session.getClient();
+
+            opens.add(client.openDoc(appId).thenCompose(doc -> {
+                var objects = new ArrayList<CompletableFuture<EngineHandle>>(ids.size());
+
+                ids.forEach(id -> objects.add(client.getObject(doc, id)));
+
+                return CompletableFuture.allOf(objects.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+                    var handles = new ArrayList<EngineHandle>(objects.size());
+                    objects.forEach(object -> handles.add(object.join()));
+                    return new Worker(client, doc, handles);
+                });
+            }));
+        }
+
+        return CompletableFuture.allOf(opens.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            var workers = new ArrayList<Worker>(opens.size());
+            opens.forEach(open -> workers.add(open.join()));
+            return new WhatIfRunner(workers, ids);
+        });
+    }
+
+    /**
+     * Runs every set and reads the layouts of the objects for each. The sets
+     * are spread over the sessions as they become free, and the first error
+     * stops the run.
+     * @param sets Selections to query.
+     * @return CompletableFuture with the layouts of the objects mapped by object
+     * id, for each set in the order of the sets.
+     * @throws IllegalStateException If another run is in progress.
+     */
+    public CompletableFuture<List<Map<String, JSONObject>>> run(List<SelectionSet> sets) {
+        if (!_running.compareAndSet(false, true)) {
+            throw new IllegalStateException("A run is in progress already.");
+        }
+
+        var results = new ArrayList<Map<String, JSONObject>>(Collections.nCopies(sets.size(), null));
+        var nextSet = new AtomicInteger();
+        var failed = new AtomicBoolean();
+        var chains = new ArrayList<CompletableFuture<Void>>(_workers.size());
+
+        for (var worker : _workers) {
+            chains.add(runSets(worker, sets, nextSet, failed, results));
+        }
+
+        return CompletableFuture.allOf(chains.toArray(new CompletableFuture<?>[0]))
+                .whenComplete((done, ex) -> _running.set(false))
+                .thenApply(done -> results);
+    }
+
+    /**
+     * Runs the next set on a session until there are none left, so each
+     * session always has one set in progress.
+     */
+    private CompletableFuture<Void> runSets(Worker worker, List<SelectionSet> sets, AtomicInteger nextSet,
+            AtomicBoolean failed, List<Map<String, JSONObject>> results) {
+
+        int index = nextSet.getAndIncrement();
+
+        if (index >= sets.size() || failed.get()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return apply(worker, sets.get(index))
+                .thenCompose(applied -> getLayouts(worker))
+                .handle((layouts, ex) -> {
+                    if (ex != null) {
+                        failed.set(true);
+                        worker.current = null; // The selections of the session are unknown now.
+                        throw ex instanceof RuntimeException ? (RuntimeException) ex : new IllegalStateException(ex);
+                    }
+
+                    results.set(index, layouts); // Each index is set once, and read after allOf.
+                    _sets.increment();
+                    return layouts;
+                })
+                .thenCompose(done -> runSets(worker, sets, nextSet, failed, results));
+    }
+
+    /**
+     * Makes the selections of a set in a session, which keeps the field
+     * selections it shares with the current ones from the start, and clears
+     * everything first if some current selection is not part of the set.
+     */
+    private CompletableFuture<Void> apply(Worker worker, SelectionSet set) {
+        if (set.isBookmark()) {
+            _bookmarks.increment();
+            worker.current = null;
+
+            return worker.client.call("ApplyBookmark", worker.doc.getHandle(),
+                    new JSONArray().put(set.getBookmarkId()))
+                    .thenAccept(result -> {
+                        if (!result.optBoolean("qSuccess", true)) {
+                            throw new IllegalStateException("Bookmark " + set.getBookmarkId() + " could not be applied.");
+                        }
+                    });
+        }
+
+        var wanted = List.copyOf(set.getFields());
+        var current = worker.current;
+        int kept = 0;
+
+        if (current != null) {
+            while (kept < current.size() && kept < wanted.size() && current.get(kept).isSameAs(wanted.get(kept))) {
+                kept++;
+            }
+
+            // The last current field can be selected again, since its own values do not limit it.
+            if (kept == current.size() - 1 && kept < wanted.size()
+                    && current.get(kept).field.equals(wanted.get(kept).field)) {
+                current = current.subList(0, kept);
+            }
+        }
+
+        CompletableFuture<Void> selected;
+
+        if (current != null && kept == current.size()) {
+            selected = CompletableFuture.completedFuture(null);
+            _reusedSelections.add(kept);
+        } else {
+            kept = 0;
+            _clears.increment();
+            selected = worker.client.call("ClearAll", worker.doc.getHandle(), new JSONArray().put(false))
+                    .thenAccept(result -> { });
+        }
+
+        worker.current = null; // Unknown until every selection is made.
+
+        for (var selection : wanted.subList(kept, wanted.size())) {
+            selected = selected.thenCompose(done -> select(worker, selection));
+        }
+
+        return selected.thenAccept(done -> worker.current = wanted);
+    }
+
+    private CompletableFuture<Void> select(Worker worker, SelectionSet.FieldSelection selection) {
+        _selections.increment();
+
+        return worker.getField(selection.field).thenCompose(field -> worker.client.call("SelectValues", field,
+                new JSONArray().put(selection.values).put(false).put(false)))
+                .thenAccept(result -> { });
+    }
+
+    private CompletableFuture<Map<String, JSONObject>> getLayouts(Worker worker) {
+        var layouts = new ArrayList<CompletableFuture<JSONObject>>(worker.objects.size());
+
+        for (var object : worker.objects) {
+            layouts.add(worker.client.call("GetLayout", object.getHandle(), new JSONArray())
+                    .thenApply(result -> result.optJSONObject("qLayout", result)));
+        }
+
+        return CompletableFuture.allOf(layouts.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            var byObject = new LinkedHashMap<String, JSONObject>();
+
+            for (int i = 0; i < layouts.size(); i++) {
+                byObject.put(_objectIds.get(i), layouts.get(i).join());
+            }
+
+            return byObject;
+        });
+    }
+
+    /**
+     * Gets the number of sets run, the selections made and those kept from the
+     * previous set, the times all selections were cleared, and the bookmarks applied.
+     * @return Metrics of the runner as JSON.
+     */
+    public JSONObject getStats() {
+        return new JSONObject()
+                .put("sessions", _workers.size())
+                .put("sets", _sets.sum())
+                .put("selections", _selections.sum())
+                .put("reusedSelections", _reusedSelections.sum())
+                .put("clears", _clears.sum())
+                .put("bookmarks", _bookmarks.sum());
+    }
+
+    /**
+     * A session of the pool with its app, objects, field handles and the
+     * selections it made. Only one set runs on it at a time.
+     */
+    private static class Worker {
+
+        private final QlikWebSocketClient client;
+        private final EngineHandle doc;
+        private final List<EngineHandle> objects;
+        private final Map<String, CompletableFuture<Integer>> fields = new HashMap<>();
+        private volatile List<SelectionSet.FieldSelection> current; // Null if unknown, like at the start.
+
+        Worker(QlikWebSocketClient client, EngineHandle doc, List<EngineHandle> objects) {
+            this.client = client;
+            this.doc = doc;
+            this.objects = objects;
+        }
+
+        synchronized CompletableFuture<Integer> getField(String name) {
+            var field = fields.get(name);
+
+            if (field == null || field.isCompletedExceptionally()) {
+                field = client.call("GetField", doc.getHandle(), new JSONArray().put(name))
+                        .thenApply(QlikWebSocketClient::getReturnedHandle);
+                fields.put(name, field);
+            }
+
+            return field;
+        }
+    }
+}
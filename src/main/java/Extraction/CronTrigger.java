@@ -0,0 +1,173 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Extraction;
+
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+
+/**
+ * CronTrigger.java (UTF-8)
+ * A trigger in the classic five field cron format "minute hour day-of-month month
+ * day-of-week", for example, "*&#47;15 6-18 * * 1-5" for every 15 minutes during
+ * office hours. Fields accept *, numbers, ranges, lists and steps. Day of week
+ * is 0-7 where both 0 and 7 are Sunday. Like cron, when both day fields are
+ * restricted, a time matches if either of them matches.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public class CronTrigger {
+
+    private static final int MAX_YEARS_AHEAD = 5;
+    private final String _expression;
+    private final BitSet _minutes;
+    private final BitSet _hours;
+    private final BitSet _daysOfMonth;
+    private final BitSet _months;
+    private final BitSet _daysOfWeek;
+    private final boolean _isDayOfMonthRestricted;
+    private final boolean _isDayOfWeekRestricted;
+
+    /**
+     * Constructions a new {@see CronTrigger} instance.
+     * @param expression Cron expression with five fields.
+     * @throws IllegalArgumentException If the expression is not valid.
+     */
+    public CronTrigger(String expression) {
+        var fields = expression.trim().split("\\s+");
+
+        if (fields.length != 5) {
+            throw new IllegalArgumentException("Expected 5 cron fields but got " + fields.length
+                    + ": " + expression);
+        }
+
+        _expression = expression.trim();
+        _minutes = parseField(fields[0], 0, 59);
+        _hours = parseField(fields[1], 0, 23);
+        _daysOfMonth = parseField(fields[2], 1, 31);
+        _months = parseField(fields[3], 1, 12);
+        _daysOfWeek = parseField(fields[4], 0, 7);
+        _isDayOfMonthRestricted = !fields[2].equals("*");
+        _isDayOfWeekRestricted = !fields[4].equals("*");
+
+        if (_daysOfWeek.get(7)) {
+            _daysOfWeek.set(0); // Both 0 and 7 mean Sunday.
+        }
+    }
+
+    /**
+     * Gets the next time the trigger fires after a given time.
+     * @param after Time to start from, which is excluded.
+     * @return Next matching time with zero seconds.
+     * @throws IllegalStateException If the expression never matches, for example, 30 February.
+     */
+    public ZonedDateTime getNextTime(ZonedDateTime after) {
+        var time = after.truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+        var limit = after.plusYears(MAX_YEARS_AHEAD);
+
+        while (time.isBefore(limit)) {
+            if (!_months.get(time.getMonthValue())) {
+                time = time.withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS).plusMonths(1);
+            } else if (!matchesDay(time)) {
+                time = time.truncatedTo(ChronoUnit.DAYS).plusDays(1);
+            } else if (!_hours.get(time.getHour())) {
+                time = time.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+            } else if (!_minutes.get(time.getMinute())) {
+                time = time.plusMinutes(1);
+            } else {
+                return time;
+            }
+        }
+
+        throw new IllegalStateException("Cron expression never matches: " + _expression);
+    }
+
+    private boolean matchesDay(ZonedDateTime time) {
+        boolean dayOfMonth = _daysOfMonth.get(time.getDayOfMonth());
+        boolean dayOfWeek = _daysOfWeek.get(time.getDayOfWeek().getValue() % 7);
+
+        if (_isDayOfMonthRestricted && _isDayOfWeekRestricted) {
+            return dayOfMonth || dayOfWeek;
+        }
+
+        return dayOfMonth && dayOfWeek;
+    }
+
+    /**
+     * Parses a cron field into the set of values it matches.
+     * @param field Field like *, 5, 1-5, *&#47;10 or 0,30.
+     * @param min Lowest allowed value.
+     * @param max Highest allowed value.
+     * @return Matching values.
+     */
+    private static BitSet parseField(String field, int min, int max) {
+        var values = new BitSet(max + 1);
+
+        for (var part : field.split(",")) {
+            var rangeAndStep = part.split("/", 2);
+            var range = rangeAndStep[0];
+            int step = rangeAndStep.length > 1 ? parseValue(rangeAndStep[1], 1, max) : 1;
+            int start;
+            int end;
+
+            if (range.equals("*")) {
+                start = min;
+                end = max;
+            } else if (range.contains("-")) {
+                var bounds = range.split("-", 2);
+                start = parseValue(bounds[0], min, max);
+                end = parseValue(bounds[1], min, max);
+            } else {
+                start = parseValue(range, min, max);
+                end = rangeAndStep.length > 1 ? max : start;
+            }
+
+            if (start > end) {
+                throw new IllegalArgumentException("Invalid cron range: " + part);
+            }
+
+            for (int value = start; value <= end; value += step) {
+                values.set(value);
+            }
+        }
+
+        return values;
+    }
+
+    private static int parseValue(String value, int min, int max) {
+        try {
+            int number = Integer.parseInt(value);
+
+            if (number < min || number > max) {
+                throw new IllegalArgumentException("Cron value " + number + " is not within "
+                        + min + "-" + max + ".");
+            }
+
+            return number;
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid cron value: " + value, ex);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return _expression;
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Extraction;
+
+import Shared.Interfaces.DeltaSink;
+import Shared.Interfaces.ExtractSink;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.json.JSONArray;
+
+/**
+ * DeltaExtractSink.java (UTF-8)
+ * An extract sink that compares each extract with a snapshot of the previous one
+ * kept on disk, and only passes the rows that were inserted, updated or deleted
+ * to a {@see DeltaSink}. Rows are matched by the values of the chosen key columns.
+ * The pages of a run are staged on disk as they arrive, so a run that resumes
+ * from a checkpoint still compares the complete extract. Use it with
+ * {@see ExtractScheduler#watch(ExtractJob)} to extract again after every reload.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public class DeltaExtractSink implements ExtractSink {
+
+    private final Path _directory;
+    private final int[] _keyColumns;
+    private final DeltaSink _target;
+
+    /**
+     * Constructions a new {@see DeltaExtractSink} instance.
+     * @param directory Directory where the snapshots are saved.
+     * @param keyColumns Indexes of the dimension columns that identify a row.
+     * @param target Output that receives the changed rows.
+     * @throws IOException
+     */
+    public DeltaExtractSink(Path directory, int[] keyColumns, DeltaSink target) throws IOException {
+        if (keyColumns.length == 0) {
+            throw new IllegalArgumentException("At least one key column is needed.");
+        }
+
+        _directory = Files.createDirectories(directory);
+        _keyColumns = keyColumns.clone();
+        _target = target;
+    }
+
+    @Override
+    public synchronized void started(String jobName, int firstRow) throws IOException {
+        if (firstRow == 0) {
+            Files.deleteIfExists(getStagingFile(jobName)); // Left behind by a run that was not resumed.
+        }
+    }
+
+    @Override
+    public synchronized void pageReceived(String jobName, int top, JSONArray qMatrix) throws IOException {
+        var rows = new JSONArray();
+
+        for (int i = 0; i < qMatrix.length(); i++) {
+            var cells = qMatrix.getJSONArray(i);
+            var row = new JSONArray();
+
+            for (int j = 0; j < cells.length(); j++) {
+                row.put(cells.getJSONObject(j).optString("qText"));
+            }
+
+            rows.put(row);
+        }
+
+        SnapshotIndex.append(getStagingFile(jobName), rows);
+    }
+
+    /**
+     * Compares the staged extract with the snapshot, passes the differences to
+     * the target, and then makes the staged extract the new snapshot.
+     * @param jobName Name of the job.
+     * @throws IOException
+     */
+    @Override
+    public synchronized void completed(String jobName) throws IOException {
+        var snapshotFile = _directory.resolve(jobName + ".snapshot");
+        var stagingFile = getStagingFile(jobName);
+        var previous = new SnapshotIndex(_keyColumns);
+        var current = new SnapshotIndex(_keyColumns);
+
+        previous.load(snapshotFile);
+        current.load(stagingFile);
+
+        for (var entry : current.getRows().entrySet()) {
+            var oldRow = previous.get(entry.getKey());
+
+            if (oldRow == null) {
+                _target.rowInserted(jobName, entry.getValue());
+            } else if (!oldRow.similar(entry.getValue())) {
+                _target.rowUpdated(jobName, oldRow, entry.getValue());
+            }
+        }
+
+        for (var entry : previous.getRows().entrySet()) {
+            if (current.get(entry.getKey()) == null) {
+                _target.rowDeleted(jobName, entry.getValue());
+            }
+        }
+
+        _target.completed(jobName);
+        current.save(snapshotFile);
+        Files.deleteIfExists(stagingFile);
+    }
+
+    private Path getStagingFile(String jobName) {
+        return _directory.resolve(jobName + ".staging");
+    }
+}
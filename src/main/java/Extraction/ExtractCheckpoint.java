@@ -0,0 +1,141 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Extraction;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * ExtractCheckpoint.java (UTF-8)
+ * Keeps track of the pages of an extract that were written to the sink, so an
+ * interrupted extract resumes at the last page instead of starting over. Pages
+ * can complete out of order, so only the row up to which every page is complete
+ * is saved. Pages after that row that were already written are extracted again
+ * on resume.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+class ExtractCheckpoint {
+
+    private static final String KEY_APP = "app";
+    private static final String KEY_OBJECT = "object";
+    private static final String KEY_NEXT_ROW = "nextRow";
+    private final Path _file;
+    private final ExtractJob _job;
+    private final TreeSet<Integer> _completedPages = new TreeSet<>(); // Tops after _nextRow.
+    private int _nextRow;
+
+    /**
+     * Constructions a new {@see ExtractCheckpoint} instance, which loads the
+     * saved checkpoint of the job if there is one for the same app and object.
+     * @param directory Directory where the checkpoints are saved.
+     * @param job Job of the extract.
+     * @throws IOException
+     */
+    ExtractCheckpoint(Path directory, ExtractJob job) throws IOException {
+        _file = directory.resolve(job.getName() + ".checkpoint");
+        _job = job;
+
+        if (Files.exists(_file)) {
+            var properties = new Properties();
+
+            try (Reader reader = Files.newBufferedReader(_file, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+
+            if (job.getAppId().equals(properties.getProperty(KEY_APP))
+                    && job.getObjectId().equals(properties.getProperty(KEY_OBJECT))) {
+                _nextRow = Integer.parseInt(properties.getProperty(KEY_NEXT_ROW, "0"));
+            }
+        }
+    }
+
+    /**
+     * Gets the row that the extract resumes from.
+     * @return First row that is not known to be written.
+     */
+    synchronized int getNextRow() {
+        return _nextRow;
+    }
+
+    /**
+     * Marks a page as written, and saves the checkpoint if every page before it is too.
+     * @param top First row of the page.
+     * @param height Number of rows in the page.
+     * @throws IOException
+     */
+    synchronized void pageCompleted(int top, int height) throws IOException {
+        if (top < _nextRow) {
+            return;
+        }
+
+        _completedPages.add(top);
+
+        int nextRow = _nextRow;
+
+        while (!_completedPages.isEmpty() && _completedPages.first() == nextRow) {
+            _completedPages.pollFirst();
+            nextRow += height;
+        }
+
+        if (nextRow != _nextRow) {
+            _nextRow = nextRow;
+            save();
+        }
+    }
+
+    /**
+     * Removes the checkpoint after the extract completes, so the next run starts
+     * from the first row again.
+     * @throws IOException
+     */
+    synchronized void delete() throws IOException {
+        _completedPages.clear();
+        _nextRow = 0;
+        Files.deleteIfExists(_file);
+    }
+
+    /**
+     * Saves the checkpoint to a temporary file first, so an interruption while
+     * writing never leaves a partial checkpoint behind.
+     * @throws IOException
+     */
+    private void save() throws IOException {
+        var properties = new Properties();
+        var temp = _file.resolveSibling(_file.getFileName() + ".tmp");
+
+        properties.setProperty(KEY_APP, _job.getAppId());
+        properties.setProperty(KEY_OBJECT, _job.getObjectId());
+        properties.setProperty(KEY_NEXT_ROW, Integer.toString(_nextRow));
+
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            properties.store(writer, "Checkpoint of extract job " + _job.getName());
+        }
+
+        Files.move(temp, _file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
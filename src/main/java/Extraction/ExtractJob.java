@@ -0,0 +1,82 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Extraction;
+
+import Shared.Interfaces.ExtractSink;
+
+/**
+ * ExtractJob.java (UTF-8)
+ * Describes a data extract of the hypercube of one object in a Qlik Sense app.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public class ExtractJob {
+
+    private final String _name;
+    private final String _engineUrl;
+    private final String _appId;
+    private final String _objectId;
+    private final ExtractSink _sink;
+    private final int _priority;
+
+    /**
+     * Constructions a new {@see ExtractJob} instance.
+     * @param name Unique name of the job, which is also used for its checkpoint file.
+     * @param engineUrl WebSocket address of the Engine node, for example, wss://server:4747/app/.
+     * @param appId Id of the app to extract from.
+     * @param objectId Id of the object whose hypercube is extracted.
+     * @param sink Output that receives the pages of the extract.
+     * @param priority Priority of the job, where higher values run first.
+     */
+    public ExtractJob(String name, String engineUrl, String appId, String objectId,
+            ExtractSink sink, int priority) {
+
+        _name = name;
+        _engineUrl = engineUrl;
+        _appId = appId;
+        _objectId = objectId;
+        _sink = sink;
+        _priority = priority;
+    }
+
+    public String getName() {
+        return _name;
+    }
+
+    public String getEngineUrl() {
+        return _engineUrl;
+    }
+
+    public String getAppId() {
+        return _appId;
+    }
+
+    public String getObjectId() {
+        return _objectId;
+    }
+
+    public ExtractSink getSink() {
+        return _sink;
+    }
+
+    public int getPriority() {
+        return _priority;
+    }
+}
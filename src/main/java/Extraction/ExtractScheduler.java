@@ -0,0 +1,672 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Extraction;
+
+import EngineAPI.EngineHandle;
+import EngineAPI.QlikWebSocketClient;
+import EngineAPI.Session;
+import Shared.Interfaces.AuthCertificate;
+import Shared.Interfaces.ChangeListener;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * ExtractScheduler.java (UTF-8)
+ * Runs data extracts now or on a cron schedule. Each Engine node gets a fixed
+ * number of pooled sessions, which caps the load an extract puts on a node. The
+ * pages of an extract are dealt to the queues of all sessions of its node, where
+ * pages of jobs with a higher priority go first. A session that runs out of work
+ * steals pages from the busiest session of the same node, so one large extract
+ * is spread over every idle session. Progress is checkpointed after each page,
+ * so an interrupted extract resumes at the last page. Sessions are kept open
+ * between pages and only reconnect when they have to switch to another app.
+ * Watched jobs run again whenever the Engine reports that their object changed.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public class ExtractScheduler implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(ExtractScheduler.class.getName());
+    private static final int MAX_CELLS_PER_PAGE = 10000; // Limit of GetHyperCubeData.
+    private static final int MAX_ATTEMPTS = 3;
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(30);
+    private static final long CALL_TIMEOUT_SECONDS = 120;
+    private static final long STEAL_INTERVAL_MILLIS = 100;
+    private final AuthCertificate _qlikCert;
+    private final int _sessionsPerNode;
+    private final Path _checkpointDirectory;
+    private final ScheduledExecutorService _timer;
+    private final Map<String, List<SessionWorker>> _nodes = new ConcurrentHashMap<>();
+    private final Map<String, ExtractRun> _runs = new ConcurrentHashMap<>();
+    private final Map<String, Schedule> _schedules = new ConcurrentHashMap<>();
+    private final Map<String, Watch> _watches = new ConcurrentHashMap<>();
+    private final AtomicLong _nextSequence = new AtomicLong();
+    private volatile boolean _isClosed;
+
+    /**
+     * Constructions a new {@see ExtractScheduler} instance.
+     * @param qlikCert Qlik certificate used for authentication.
+     * @param sessionsPerNode Maximum number of sessions, and so of concurrent page
+     * requests, per Engine node.
+     * @param checkpointDirectory Directory where the checkpoints of extracts are saved.
+     * @throws IOException
+     */
+    public ExtractScheduler(AuthCertificate qlikCert, int sessionsPerNode, Path checkpointDirectory)
+            throws IOException {
+
+        if (sessionsPerNode < 1) {
+            throw new IllegalArgumentException("At least one session per node is needed.");
+        }
+
+        _qlikCert = qlikCert;
+        _sessionsPerNode = sessionsPerNode;
+        _checkpointDirectory = Files.createDirectories(checkpointDirectory);
+        _timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "extract-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs a job every time its trigger fires. A run is skipped when the previous
+     * run of the job is still in progress.
+     * @param job Job to schedule, which replaces a scheduled job with the same name.
+     * @param trigger Trigger of the job.
+     */
+    public void schedule(ExtractJob job, CronTrigger trigger) {
+        var schedule = new Schedule();
+        var replaced = _schedules.put(job.getName(), schedule);
+
+        if (replaced != null) {
+            replaced.cancel();
+        }
+
+        scheduleNext(job, trigger, schedule);
+    }
+
+    /**
+     * Stops running a job on its schedule, which does not stop a run in progress.
+     * @param jobName Name of the job.
+     */
+    public void unschedule(String jobName) {
+        var schedule = _schedules.remove(jobName);
+
+        if (schedule != null) {
+            schedule.cancel();
+        }
+    }
+
+    private void scheduleNext(ExtractJob job, CronTrigger trigger, Schedule schedule) {
+        var now = ZonedDateTime.now();
+        long delay = Duration.between(now, trigger.getNextTime(now)).toMillis();
+
+        schedule.setNext(_timer.schedule(() -> {
+            // A schedule that was replaced or unscheduled while due must not run or re-arm.
+            if (schedule.isCancelled()) {
+                return;
+            }
+
+            if (_runs.containsKey(job.getName())) {
+                LOGGER.log(Level.WARNING, "Skipped extract {0} because it is still running.", job.getName());
+            } else {
+                submit(job);
+            }
+
+            if (!_isClosed) {
+                scheduleNext(job, trigger, schedule);
+            }
+        }, delay, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Runs a job now, resuming from its checkpoint if a previous run was interrupted.
+     * @param job Job to run.
+     * @return CompletableFuture that completes when every page was written to the
+     * sink, or the future of the run in progress if the job is already running.
+     */
+    public CompletableFuture<Void> submit(ExtractJob job) {
+        if (_isClosed) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Scheduler is closed."));
+        }
+
+        var isNew = new boolean[1];
+        ExtractRun run;
+
+        try {
+            run = _runs.computeIfAbsent(job.getName(), name -> {
+                try {
+                    isNew[0] = true;
+                    return new ExtractRun(job, new ExtractCheckpoint(_checkpointDirectory, job),
+                            _nextSequence.getAndIncrement());
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            return CompletableFuture.failedFuture(ex.getCause());
+        }
+
+        if (isNew[0]) {
+            run.future.whenComplete((result, ex) -> _runs.remove(job.getName(), run));
+
+            // The layout is read first to know how many pages to deal.
+            var workers = getWorkers(job.getEngineUrl());
+            leastLoaded(workers).enqueue(new PageTask(run, -1));
+        }
+
+        return run.future;
+    }
+
+    /**
+     * Runs a job in incremental mode, where it runs once now and again every time
+     * the Engine notifies that its object changed, for example, after a reload.
+     * Use a {@see DeltaExtractSink} as the sink of the job to only pass the rows
+     * that changed. A change during a run triggers one more run afterwards.
+     * @param job Job to watch, which replaces a watched job with the same name.
+     * @return CompletableFuture that completes when the first run completes.
+     */
+    public CompletableFuture<Void> watch(ExtractJob job) {
+        unwatch(job.getName());
+
+        var watch = new Watch(job);
+
+        _watches.put(job.getName(), watch);
+        return watch.start();
+    }
+
+    /**
+     * Stops watching a job for changes, which does not stop a run in progress.
+     * @param jobName Name of the job.
+     */
+    public void unwatch(String jobName) {
+        var watch = _watches.remove(jobName);
+
+        if (watch != null) {
+            watch.close();
+        }
+    }
+
+    private List<SessionWorker> getWorkers(String engineUrl) {
+        return _nodes.computeIfAbsent(engineUrl, url -> {
+            var workers = new ArrayList<SessionWorker>(_sessionsPerNode);
+
+            for (int i = 0; i < _sessionsPerNode; i++) {
+                workers.add(new SessionWorker(url, workers, i));
+            }
+
+            workers.forEach(worker -> worker.start());
+            return List.copyOf(workers);
+        });
+    }
+
+    private static SessionWorker leastLoaded(List<SessionWorker> workers) {
+        var least = workers.get(0);
+
+        for (var worker : workers) {
+            if (worker.getQueueSize() < least.getQueueSize()) {
+                least = worker;
+            }
+        }
+
+        return least;
+    }
+
+    /**
+     * Stops all sessions. Runs in progress fail with a {@see CancellationException}
+     * and keep their checkpoint, so they resume when submitted again.
+     */
+    @Override
+    public void close() {
+        _isClosed = true;
+        _timer.shutdownNow();
+        _schedules.values().forEach(Schedule::cancel);
+        _schedules.clear();
+        _watches.keySet().forEach(this::unwatch);
+        _nodes.values().forEach(workers -> workers.forEach(worker -> worker.interrupt()));
+        _runs.values().forEach(run -> run.future.completeExceptionally(
+                new CancellationException("Scheduler was closed.")));
+    }
+
+    /**
+     * A session of its own that keeps the layout of the object of a job read, so
+     * the Engine notifies it when the object changes.
+     */
+    private class Watch implements ChangeListener {
+
+        private final ExtractJob _job;
+        private final AtomicBoolean _isRerunNeeded = new AtomicBoolean();
+        private volatile Session _session;
+        private volatile EngineHandle _object;
+
+        Watch(ExtractJob job) {
+            _job = job;
+        }
+
+        CompletableFuture<Void> start() {
+            QlikWebSocketClient client;
+
+            try {
+                client = new QlikWebSocketClient(_job.getEngineUrl() + _job.getAppId(), _qlikCert);
+            } catch (Exception ex) {
+                return CompletableFuture.failedFuture(ex);
+            }
+
+            client.addChangeListener(this);
+
+            return client.connectAsync(CONNECT_TIMEOUT)
+                    .thenCompose(session -> {
+                        _session = session;
+                        return client.openDoc(_job.getAppId());
+                    })
+                    .thenCompose(doc -> client.getObject(doc, _job.getObjectId()))
+                    .thenCompose(object -> {
+                        _object = object;
+                        return subscribe();
+                    })
+                    .thenCompose(layout -> extract());
+        }
+
+        /**
+         * Reads the layout of the object, which asks the Engine to notify about its next change.
+         * @return CompletableFuture with the layout.
+         */
+        private CompletableFuture<JSONObject> subscribe() {
+            return _session.getClient().call("GetLayout", _object.getHandle(), new JSONArray());
+        }
+
+        @Override
+        public void handlesChanged(List<Integer> handles) {
+            var object = _object;
+
+            if (object == null || !handles.contains(object.getHandle())) {
+                return;
+            }
+
+            subscribe().whenComplete((layout, ex) -> {
+                if (ex != null) {
+                    LOGGER.log(Level.WARNING, "Failed to read the layout of extract " 
+                            + _job.getName() + " again.", ex);
+                }
+
+                if (!_isClosed) {
+                    _timer.execute(this::extract); // Keeps file access off the read thread.
+                }
+            });
+        }
+
+        private CompletableFuture<Void> extract() {
+            if (_watches.get(_job.getName()) != this) {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            var running = _runs.get(_job.getName());
+
+            if (running != null && !running.future.isDone()) {
+                _isRerunNeeded.set(true);
+                running.future.whenComplete((result, ex) -> {
+                    // Runs before submit removes the run, so the rerun is started on the timer.
+                    if (_isRerunNeeded.getAndSet(false) && !_isClosed) {
+                        _timer.execute(this::extract);
+                    }
+                });
+                return running.future;
+            }
+
+            if (running != null) {
+                _runs.remove(_job.getName(), running); // Done, but not removed yet.
+            }
+
+            return submit(_job);
+        }
+
+        void close() {
+            var session = _session;
+
+            _object = null;
+
+            if (session != null) {
+                session.close();
+            }
+        }
+    }
+
+    /**
+     * The timer of a job scheduled with a trigger. Each call to schedule gets
+     * its own instance, so a timer that fires after its job was unscheduled or
+     * scheduled again sees that it was cancelled, and cancels what it re-armed.
+     */
+    private static class Schedule {
+
+        private ScheduledFuture<?> next;
+        private boolean isCancelled;
+
+        synchronized void setNext(ScheduledFuture<?> future) {
+            if (isCancelled) {
+                future.cancel(false);
+            } else {
+                next = future;
+            }
+        }
+
+        synchronized boolean isCancelled() {
+            return isCancelled;
+        }
+
+        synchronized void cancel() {
+            isCancelled = true;
+
+            if (next != null) {
+                next.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * The state of one run of a job.
+     */
+    private static class ExtractRun {
+
+        private final ExtractJob job;
+        private final ExtractCheckpoint checkpoint;
+        private final long sequence; // Orders runs of the same priority first come, first served.
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private final AtomicInteger remainingPages = new AtomicInteger();
+        private volatile int width;
+        private volatile int height;
+
+        ExtractRun(ExtractJob job, ExtractCheckpoint checkpoint, long sequence) {
+            this.job = job;
+            this.checkpoint = checkpoint;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * A page to extract, or the layout of the object when top is -1.
+     */
+    private static class PageTask implements Comparable<PageTask> {
+
+        private final ExtractRun run;
+        private final int top;
+        private int attempts;
+
+        PageTask(ExtractRun run, int top) {
+            this.run = run;
+            this.top = top;
+        }
+
+        @Override
+        public int compareTo(PageTask other) {
+            int result = Integer.compare(other.run.job.getPriority(), run.job.getPriority());
+
+            if (result == 0) {
+                result = Long.compare(run.sequence, other.run.sequence);
+            }
+
+            return result != 0 ? result : Integer.compare(top, other.top);
+        }
+    }
+
+    /**
+     * A pooled session with its own queue of pages, which runs on its own thread.
+     */
+    private class SessionWorker extends Thread {
+
+        private final String _engineUrl;
+        private final List<SessionWorker> _peers;
+        private final PriorityBlockingQueue<PageTask> _queue = new PriorityBlockingQueue<>();
+        private final Map<String, EngineHandle> _objects = new HashMap<>();
+        private Session _session;
+        private String _appId;
+        private EngineHandle _doc;
+
+        SessionWorker(String engineUrl, List<SessionWorker> peers, int index) {
+            super("extract-" + engineUrl + "-" + index);
+            _engineUrl = engineUrl;
+            _peers = peers;
+            setDaemon(true);
+        }
+
+        void enqueue(PageTask task) {
+            _queue.add(task);
+        }
+
+        int getQueueSize() {
+            return _queue.size();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!_isClosed) {
+                    var task = nextTask();
+
+                    if (task != null && !task.run.future.isDone()) {
+                        process(task);
+                    }
+                }
+            } catch (InterruptedException ex) {
+                // Closed while waiting for work.
+            } finally {
+                closeSession();
+            }
+        }
+
+        /**
+         * Takes the next page from the own queue, or steals one from the peer with
+         * the most queued pages.
+         * @return Next page, or null if there was no work for a while.
+         * @throws InterruptedException
+         */
+        private PageTask nextTask() throws InterruptedException {
+            var task = _queue.poll();
+
+            if (task != null) {
+                return task;
+            }
+
+            SessionWorker busiest = null;
+
+            for (var peer : _peers) {
+                if (peer != this && (busiest == null || peer.getQueueSize() > busiest.getQueueSize())) {
+                    busiest = peer;
+                }
+            }
+
+            task = busiest == null ? null : busiest._queue.poll();
+
+            return task != null ? task : _queue.poll(STEAL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        private void process(PageTask task) throws InterruptedException {
+            var run = task.run;
+
+            try {
+                var object = getObject(run.job);
+
+                if (task.top < 0) {
+                    dealPages(run, object);
+                } else {
+                    extractPage(task, object);
+                }
+            } catch (InterruptedException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                if (_session != null && !_session.isOpen()) {
+                    closeSession();
+                }
+
+                if (++task.attempts < MAX_ATTEMPTS) {
+                    LOGGER.log(Level.WARNING, "Retrying page " + task.top + " of extract "
+                            + run.job.getName() + ".", ex);
+                    enqueue(task);
+                } else {
+                    LOGGER.log(Level.SEVERE, "Extract " + run.job.getName() + " failed.", ex);
+                    run.future.completeExceptionally(ex instanceof ExecutionException ? ex.getCause() : ex);
+                }
+            }
+        }
+
+        /**
+         * Reads the size of the hypercube and deals the pages from the checkpoint
+         * onward over the queues of all sessions of the node.
+         * @param run Run to deal the pages of.
+         * @param object Handle of the object.
+         * @throws Exception
+         */
+        private void dealPages(ExtractRun run, EngineHandle object) throws Exception {
+            var size = _session.getClient().call("GetLayout", object.getHandle(), new JSONArray())
+                    .get(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                    .getJSONObject("qLayout").getJSONObject("qHyperCube").getJSONObject("qSize");
+            int width = size.getInt("qcx");
+            int rows = size.getInt("qcy");
+            int height = Math.max(1, MAX_CELLS_PER_PAGE / Math.max(1, width));
+            int first = run.checkpoint.getNextRow();
+            var tasks = new ArrayList<PageTask>();
+
+            for (int top = first; top < rows; top += height) {
+                tasks.add(new PageTask(run, top));
+            }
+
+            run.width = width;
+            run.height = height;
+            run.remainingPages.set(tasks.size());
+            run.job.getSink().started(run.job.getName(), first);
+
+            if (tasks.isEmpty()) {
+                complete(run);
+                return;
+            }
+
+            int offset = _peers.indexOf(this);
+
+            for (int i = 0; i < tasks.size(); i++) {
+                _peers.get((offset + i) % _peers.size()).enqueue(tasks.get(i));
+            }
+        }
+
+        private void extractPage(PageTask task, EngineHandle object) throws Exception {
+            var run = task.run;
+            var page = new JSONObject()
+                    .put("qTop", task.top)
+                    .put("qLeft", 0)
+                    .put("qWidth", run.width)
+                    .put("qHeight", run.height);
+            var result = _session.getClient().call("GetHyperCubeData", object.getHandle(),
+                    new JSONArray().put("/qHyperCubeDef").put(new JSONArray().put(page)))
+                    .get(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            var matrix = result.getJSONArray("qDataPages").getJSONObject(0).getJSONArray("qMatrix");
+
+            if (run.future.isDone()) {
+                return; // Failed or cancelled while the page was requested.
+            }
+
+            run.job.getSink().pageReceived(run.job.getName(), task.top, matrix);
+            run.checkpoint.pageCompleted(task.top, run.height);
+
+            if (run.remainingPages.decrementAndGet() == 0) {
+                complete(run);
+            }
+        }
+
+        /**
+         * Completes a run after its last page. A sink that fails to complete fails
+         * the run, since there are no pages left to retry, and the checkpoint is
+         * kept so the next run only completes the sink again.
+         * @param run Run to complete.
+         */
+        private void complete(ExtractRun run) {
+            try {
+                run.job.getSink().completed(run.job.getName());
+                run.checkpoint.delete();
+                run.future.complete(null);
+            } catch (IOException ex) {
+                LOGGER.log(Level.SEVERE, "Extract " + run.job.getName() + " failed to complete.", ex);
+                run.future.completeExceptionally(ex);
+            }
+        }
+
+        /**
+         * Gets the handle of the object of a job, and connects to its app first if
+         * this session has another app or no app open, since a session can only
+         * have one app open.
+         * @param job Job of the object.
+         * @return Handle of the object.
+         * @throws Exception
+         */
+        private EngineHandle getObject(ExtractJob job) throws Exception {
+            if (_session == null || !_session.isOpen() || !job.getAppId().equals(_appId)) {
+                closeSession();
+
+                var client = new QlikWebSocketClient(_engineUrl + job.getAppId(), _qlikCert);
+
+                _session = client.connectAsync(CONNECT_TIMEOUT).get();
+                _doc = client.openDoc(job.getAppId()).get(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                _appId = job.getAppId();
+            }
+
+            var object = _objects.get(job.getObjectId());
+
+            if (object == null) {
+                object = _session.getClient().getObject(_doc, job.getObjectId())
+                        .get(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                _objects.put(job.getObjectId(), object);
+            }
+
+            return object;
+        }
+
+        private void closeSession() {
+            _objects.clear();
+            _doc = null;
+            _appId = null;
+
+            if (_session != null) {
+                _session.close();
+                _session = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Extraction;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import org.json.JSONArray;
+
+/**
+ * SnapshotIndex.java (UTF-8)
+ * The rows of an extract indexed by the values of the key columns. The rows are
+ * stored one JSON array per line, so the file can be appended to while pages
+ * arrive and loaded again after an interruption. When rows have the same key,
+ * the last one wins.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+class SnapshotIndex {
+
+    private static final char KEY_SEPARATOR = '\u001F'; // Unit separator, which is not used in text.
+    private final int[] _keyColumns;
+    private final Map<String, JSONArray> _rows = new HashMap<>();
+
+    /**
+     * Constructions a new {@see SnapshotIndex} instance.
+     * @param keyColumns Indexes of the columns that identify a row.
+     */
+    SnapshotIndex(int[] keyColumns) {
+        _keyColumns = keyColumns.clone();
+    }
+
+    /**
+     * Loads the rows of a file into the index if the file exists.
+     * @param file File with one row per line.
+     * @throws IOException
+     */
+    void load(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+
+        try (var lines = Files.lines(file, StandardCharsets.UTF_8)) {
+            lines.filter(line -> !line.isEmpty()).forEach(line -> put(new JSONArray(line)));
+        }
+    }
+
+    void put(JSONArray row) {
+        _rows.put(getKey(row), row);
+    }
+
+    JSONArray get(String key) {
+        return _rows.get(key);
+    }
+
+    Map<String, JSONArray> getRows() {
+        return _rows;
+    }
+
+    String getKey(JSONArray row) {
+        var key = new StringBuilder();
+
+        for (int column : _keyColumns) {
+            key.append(row.optString(column)).append(KEY_SEPARATOR);
+        }
+
+        return key.toString();
+    }
+
+    /**
+     * Replaces a file with the rows of the index, using a temporary file first so
+     * an interruption never leaves a partial snapshot behind.
+     * @param file File to save to.
+     * @throws IOException
+     */
+    void save(Path file) throws IOException {
+        var temp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (var row : _rows.values()) {
+                writer.write(row.toString());
+                writer.newLine();
+            }
+        }
+
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Appends rows to a file.
+     * @param file File to append to, which is created if needed.
+     * @param rows Rows to append.
+     * @throws IOException
+     */
+    static void append(Path file, JSONArray rows) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+
+            for (int i = 0; i < rows.length(); i++) {
+                writer.write(rows.get(i).toString());
+                writer.newLine();
+            }
+        }
+    }
+}
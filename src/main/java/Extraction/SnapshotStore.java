@@ -0,0 +1,474 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Extraction;
+
+import Shared.Interfaces.ExtractSink;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import org.json.JSONArray;
+
+/**
+ * SnapshotStore.java (UTF-8)
+ * A local store for the pages of an extracted hypercube, so downstream tools can
+ * read the data again at memory speed without querying the Engine. Every column
+ * is a memory-mapped file of fixed-width records with the qNum of the cell and
+ * the id of its qText in an off-heap {@see TextDictionary}. Rows are only ever
+ * appended, and each append publishes a new {@see View}, so readers see a
+ * consistent number of rows without locks while pages are appended. Compaction
+ * writes a new generation without duplicate rows or unused texts, and swaps it
+ * in while readers keep using the generation of their view.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public class SnapshotStore implements ExtractSink, AutoCloseable {
+
+    private static final String CURRENT_FILE = "CURRENT";
+    private static final int RECORD_SIZE = Double.BYTES + Integer.BYTES; // qNum and qText id.
+    private static final int NO_TEXT = -1;
+    private static final int INITIAL_ROWS = 1024;
+    private final Path _directory;
+    private Generation _generation; // Only used while holding the lock of this store.
+    private volatile View _view;
+
+    /**
+     * Constructions a new {@see SnapshotStore} instance, which opens the snapshot
+     * in a directory or creates an empty one.
+     * @param directory Directory of the snapshot.
+     * @throws IOException
+     */
+    public SnapshotStore(Path directory) throws IOException {
+        _directory = Files.createDirectories(directory);
+
+        var current = _directory.resolve(CURRENT_FILE);
+        int number = Files.exists(current) ? Integer.parseInt(Files.readString(current).trim()) : 0;
+
+        _generation = new Generation(_directory, number);
+        _view = _generation.publish();
+        deleteOtherGenerations(number); // Left behind when a compaction was interrupted.
+        writeCurrent(number);
+    }
+
+    /**
+     * Gets the rows published so far, which can be read from any thread while
+     * rows are appended or the store is compacted.
+     * @return View of the published rows.
+     */
+    public View view() {
+        return _view;
+    }
+
+    /**
+     * Appends the rows of a page, and publishes them to new views.
+     * @param top Row of the hypercube where the page starts.
+     * @param qMatrix Rows of cells of the page.
+     * @throws IOException
+     */
+    public synchronized void append(int top, JSONArray qMatrix) throws IOException {
+        for (int i = 0; i < qMatrix.length(); i++) {
+            var cells = qMatrix.getJSONArray(i);
+            var numbers = new double[cells.length()];
+            var texts = new String[cells.length()];
+
+            for (int j = 0; j < cells.length(); j++) {
+                var cell = cells.getJSONObject(j);
+                var number = cell.opt("qNum"); // The Engine sends "NaN" for cells without a number.
+
+                numbers[j] = number instanceof Number ? ((Number) number).doubleValue() : Double.NaN;
+                texts[j] = cell.has("qText") ? cell.getString("qText") : null;
+            }
+
+            _generation.appendRow(top + i, numbers, texts);
+        }
+
+        _view = _generation.publish();
+    }
+
+    /**
+     * Starts a new empty generation. Views of the previous one stay readable.
+     * @throws IOException
+     */
+    public synchronized void clear() throws IOException {
+        swap(newGeneration());
+    }
+
+    /**
+     * Rewrites the snapshot into a new generation in the order of the hypercube
+     * rows, where only the last appended copy of a row is kept, for example, of
+     * pages that were extracted again after a resume, and only the texts that are
+     * still used. Appends wait for the compaction, but readers do not.
+     * @throws IOException
+     */
+    public synchronized void compact() throws IOException {
+        var source = _view;
+        var target = newGeneration();
+        int maxSourceRow = -1;
+
+        for (int row = 0; row < source.getRowCount(); row++) {
+            maxSourceRow = Math.max(maxSourceRow, source.getSourceRow(row));
+        }
+
+        var lastCopy = new int[maxSourceRow + 1];
+
+        Arrays.fill(lastCopy, -1);
+
+        for (int row = 0; row < source.getRowCount(); row++) {
+            lastCopy[source.getSourceRow(row)] = row;
+        }
+
+        var numbers = new double[source.getColumnCount()];
+        var texts = new String[source.getColumnCount()];
+
+        for (int row : lastCopy) {
+            if (row < 0) {
+                continue; // Never extracted.
+            }
+
+            for (int column = 0; column < numbers.length; column++) {
+                numbers[column] = source.getNumber(row, column);
+                texts[column] = source.getText(row, column);
+            }
+
+            target.appendRow(source.getSourceRow(row), numbers, texts);
+        }
+
+        swap(target);
+    }
+
+    /**
+     * Writes the published rows to disk.
+     */
+    public synchronized void force() {
+        _generation.force();
+    }
+
+    private Generation newGeneration() throws IOException {
+        int number = _generation.number + 1;
+
+        deleteGeneration(Generation.getDirectory(_directory, number));
+        return new Generation(_directory, number);
+    }
+
+    private void swap(Generation target) throws IOException {
+        var old = _generation;
+
+        _view = target.publish();
+        target.force();
+        writeCurrent(target.number);
+        _generation = target;
+        old.close();
+        deleteOtherGenerations(target.number);
+    }
+
+    private void writeCurrent(int number) throws IOException {
+        var current = _directory.resolve(CURRENT_FILE);
+        var temp = _directory.resolve(CURRENT_FILE + ".tmp");
+
+        Files.writeString(temp, Integer.toString(number));
+        Files.move(temp, current, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Deletes the files of other generations. Files that are still mapped by
+     * views cannot be deleted on some platforms, so failures are left for next time.
+     * @param number Number of the generation to keep.
+     */
+    private void deleteOtherGenerations(int number) {
+        var keep = Generation.getDirectory(_directory, number);
+
+        try (var entries = Files.list(_directory)) {
+            entries.filter(path -> path.getFileName().toString().startsWith("gen-") && !path.equals(keep))
+                    .forEach(SnapshotStore::deleteGeneration);
+        } catch (IOException ex) {
+            // Tried again the next time.
+        }
+    }
+
+    private static void deleteGeneration(Path directory) {
+        try (var files = Files.list(directory)) {
+            for (var file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+
+            Files.deleteIfExists(directory);
+        } catch (IOException ex) {
+            // Still mapped, so tried again the next time.
+        }
+    }
+
+    /**
+     * Starts over with an empty generation when an extract starts from the first row.
+     * @param jobName Name of the job.
+     * @param firstRow Row the run starts from.
+     * @throws IOException
+     */
+    @Override
+    public synchronized void started(String jobName, int firstRow) throws IOException {
+        if (firstRow == 0 && _view.getRowCount() > 0) {
+            clear();
+        }
+    }
+
+    @Override
+    public void pageReceived(String jobName, int top, JSONArray qMatrix) throws IOException {
+        append(top, qMatrix);
+    }
+
+    @Override
+    public void completed(String jobName) throws IOException {
+        compact();
+    }
+
+    /**
+     * Writes the published rows to disk and closes the files. Views stay readable.
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        _generation.force();
+        _generation.close();
+    }
+
+    /**
+     * An immutable view of the rows that were published when it was taken.
+     */
+    public static class View {
+
+        private final int _columnCount;
+        private final int _rowCount;
+        private final ByteBuffer[] _columns;
+        private final ByteBuffer _sourceRows;
+        private final ByteBuffer _dictionary;
+
+        View(int columnCount, int rowCount, ByteBuffer[] columns, ByteBuffer sourceRows,
+                ByteBuffer dictionary) {
+
+            _columnCount = columnCount;
+            _rowCount = rowCount;
+            _columns = columns;
+            _sourceRows = sourceRows;
+            _dictionary = dictionary;
+        }
+
+        public int getColumnCount() {
+            return _columnCount;
+        }
+
+        public int getRowCount() {
+            return _rowCount;
+        }
+
+        /**
+         * Gets the row of the hypercube that a row of the snapshot was extracted from.
+         * @param row Row of the snapshot.
+         * @return Row of the hypercube.
+         */
+        public int getSourceRow(int row) {
+            checkIndex(row, 0);
+            return _sourceRows.getInt(row * Integer.BYTES);
+        }
+
+        /**
+         * Gets the qNum of a cell.
+         * @param row Row of the snapshot.
+         * @param column Column of the cell.
+         * @return Number of the cell, or NaN if it has none.
+         */
+        public double getNumber(int row, int column) {
+            checkIndex(row, column);
+            return _columns[column].getDouble(row * RECORD_SIZE);
+        }
+
+        /**
+         * Gets the qText of a cell.
+         * @param row Row of the snapshot.
+         * @param column Column of the cell.
+         * @return Text of the cell, or null if it has none.
+         */
+        public String getText(int row, int column) {
+            checkIndex(row, column);
+
+            int id = _columns[column].getInt(row * RECORD_SIZE + Double.BYTES);
+
+            return id == NO_TEXT ? null : TextDictionary.read(_dictionary, id);
+        }
+
+        private void checkIndex(int row, int column) {
+            if (row < 0 || row >= _rowCount || column < 0 || (column >= _columnCount && _rowCount > 0)) {
+                throw new IndexOutOfBoundsException("Cell " + row + ", " + column
+                        + " is outside of " + _rowCount + " rows and " + _columnCount + " columns.");
+            }
+        }
+    }
+
+    /**
+     * The files of one generation of the snapshot, which are only written by the
+     * store. The meta file holds the number of columns, published rows and
+     * dictionary bytes, so the published rows survive a restart.
+     */
+    private static class Generation implements AutoCloseable {
+
+        private static final int META_SIZE = 3 * Integer.BYTES;
+        private final int number;
+        private final Path directory;
+        private final FileChannel metaChannel;
+        private final MappedByteBuffer meta;
+        private final TextDictionary dictionary;
+        private FileChannel[] columnChannels = new FileChannel[0];
+        private MappedByteBuffer[] columns = new MappedByteBuffer[0];
+        private FileChannel sourceRowChannel;
+        private MappedByteBuffer sourceRows;
+        private int columnCount;
+        private int rowCount;
+        private int rowCapacity;
+
+        Generation(Path storeDirectory, int number) throws IOException {
+            this.number = number;
+            directory = Files.createDirectories(getDirectory(storeDirectory, number));
+            metaChannel = open(directory.resolve("meta.dat"));
+            meta = metaChannel.map(FileChannel.MapMode.READ_WRITE, 0, META_SIZE);
+            columnCount = meta.getInt(0);
+            rowCount = meta.getInt(Integer.BYTES);
+            dictionary = new TextDictionary(directory.resolve("dictionary.dat"), meta.getInt(2 * Integer.BYTES));
+
+            if (columnCount > 0) {
+                mapColumns(Math.max(INITIAL_ROWS, rowCount));
+            }
+        }
+
+        static Path getDirectory(Path storeDirectory, int number) {
+            return storeDirectory.resolve(String.format("gen-%06d", number));
+        }
+
+        void appendRow(int sourceRow, double[] numbers, String[] texts) throws IOException {
+            if (columnCount == 0) {
+                columnCount = numbers.length;
+                mapColumns(INITIAL_ROWS);
+            } else if (numbers.length != columnCount) {
+                throw new IllegalArgumentException("Row has " + numbers.length + " columns instead of "
+                        + columnCount + ".");
+            }
+
+            if (rowCount == rowCapacity) {
+                mapColumns(rowCapacity * 2);
+            }
+
+            for (int column = 0; column < columnCount; column++) {
+                int offset = rowCount * RECORD_SIZE;
+
+                columns[column].putDouble(offset, numbers[column]);
+                columns[column].putInt(offset + Double.BYTES,
+                        texts[column] == null ? NO_TEXT : dictionary.intern(texts[column]));
+            }
+
+            sourceRows.putInt(rowCount * Integer.BYTES, sourceRow);
+            rowCount++;
+        }
+
+        /**
+         * Saves the row count in the meta file and creates a view of the rows so far.
+         * @return View of the rows.
+         */
+        View publish() {
+            meta.putInt(0, columnCount);
+            meta.putInt(Integer.BYTES, rowCount);
+            meta.putInt(2 * Integer.BYTES, dictionary.getSize());
+
+            var views = new ByteBuffer[columnCount];
+
+            for (int column = 0; column < columnCount; column++) {
+                views[column] = columns[column].duplicate();
+            }
+
+            return new View(columnCount, rowCount, views,
+                    sourceRows == null ? ByteBuffer.allocate(0) : sourceRows.duplicate(), dictionary.getData());
+        }
+
+        /**
+         * Maps the column files with room for more rows. Earlier mappings stay
+         * valid for the views that use them, since rows never change once written.
+         * @param capacity Number of rows to map.
+         * @throws IOException
+         */
+        private void mapColumns(int capacity) throws IOException {
+            if ((long) capacity * RECORD_SIZE > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot exceeds the maximum of "
+                        + Integer.MAX_VALUE / RECORD_SIZE + " rows.");
+            }
+
+            if (columnChannels.length == 0) {
+                columnChannels = new FileChannel[columnCount];
+                columns = new MappedByteBuffer[columnCount];
+
+                for (int column = 0; column < columnCount; column++) {
+                    columnChannels[column] = open(directory.resolve("column-" + column + ".dat"));
+                }
+
+                sourceRowChannel = open(directory.resolve("rows.dat"));
+            }
+
+            for (int column = 0; column < columnCount; column++) {
+                columns[column] = columnChannels[column].map(FileChannel.MapMode.READ_WRITE, 0,
+                        (long) capacity * RECORD_SIZE);
+            }
+
+            sourceRows = sourceRowChannel.map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity * Integer.BYTES);
+            rowCapacity = capacity;
+        }
+
+        void force() {
+            for (var column : columns) {
+                column.force();
+            }
+
+            if (sourceRows != null) {
+                sourceRows.force();
+            }
+
+            dictionary.force();
+            meta.force();
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (var channel : columnChannels) {
+                channel.close();
+            }
+
+            if (sourceRowChannel != null) {
+                sourceRowChannel.close();
+            }
+
+            dictionary.close();
+            metaChannel.close();
+        }
+
+        private static FileChannel open(Path file) throws IOException {
+            return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        }
+    }
+}
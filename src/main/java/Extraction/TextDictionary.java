@@ -0,0 +1,237 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Extraction;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * TextDictionary.java (UTF-8)
+ * An append-only dictionary of the qText values of a snapshot, which keeps every
+ * distinct text once in a memory-mapped file. The id of a text is the offset of
+ * its entry, which is the length followed by the UTF-8 bytes. The lookup table
+ * used to find existing texts is an open-addressing hash table in direct memory,
+ * so neither the texts nor the table live on the Java heap. Entries never move,
+ * so readers can resolve ids while texts are appended.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+class TextDictionary implements AutoCloseable {
+
+    private static final int INITIAL_SIZE = 64 * 1024;
+    private static final int INITIAL_SLOTS = 4096;
+    private final FileChannel _channel;
+    private MappedByteBuffer _data;
+    private int _size; // Bytes used in the file.
+    private ByteBuffer _slots; // Offset + 1 of the entry in each slot, where 0 is empty.
+    private int _count;
+
+    /**
+     * Constructions a new {@see TextDictionary} instance, which rebuilds the lookup
+     * table from the entries already in the file.
+     * @param file File of the dictionary, which is created if needed.
+     * @param size Number of bytes of the file that hold entries.
+     * @throws IOException
+     */
+    TextDictionary(Path file, int size) throws IOException {
+        _channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        _data = _channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(INITIAL_SIZE, _channel.size()));
+        _slots = ByteBuffer.allocateDirect(INITIAL_SLOTS * Integer.BYTES);
+
+        for (int offset = 0; offset < size; offset += Integer.BYTES + _data.getInt(offset)) {
+            insertSlot(offset);
+        }
+
+        _size = size;
+    }
+
+    /**
+     * Gets the id of a text, and adds the text if it is not in the dictionary yet.
+     * @param text Text to look up.
+     * @return Id of the text.
+     * @throws IOException
+     */
+    int intern(String text) throws IOException {
+        var bytes = text.getBytes(StandardCharsets.UTF_8);
+        int mask = getSlotCount() - 1;
+
+        for (int slot = hash(bytes) & mask; ; slot = (slot + 1) & mask) {
+            int entry = _slots.getInt(slot * Integer.BYTES);
+
+            if (entry == 0) {
+                break;
+            }
+
+            if (matches(entry - 1, bytes)) {
+                return entry - 1;
+            }
+        }
+
+        int offset = _size;
+
+        ensureCapacity(Integer.BYTES + bytes.length);
+        _data.putInt(offset, bytes.length);
+
+        for (int i = 0; i < bytes.length; i++) {
+            _data.put(offset + Integer.BYTES + i, bytes[i]);
+        }
+
+        _size += Integer.BYTES + bytes.length;
+        insertSlot(offset);
+
+        return offset;
+    }
+
+    /**
+     * Gets the mapped entries, which stays valid for the ids handed out so far
+     * even after the file grows.
+     * @return Buffer with the entries.
+     */
+    ByteBuffer getData() {
+        return _data.duplicate();
+    }
+
+    int getSize() {
+        return _size;
+    }
+
+    /**
+     * Reads the text of an id from the entries of a dictionary.
+     * @param data Buffer from {@see #getData()}.
+     * @param id Id of the text.
+     * @return Text of the id.
+     */
+    static String read(ByteBuffer data, int id) {
+        var bytes = new byte[data.getInt(id)];
+
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = data.get(id + Integer.BYTES + i);
+        }
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    void force() {
+        _data.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        _channel.close();
+    }
+
+    private int getSlotCount() {
+        return _slots.capacity() / Integer.BYTES;
+    }
+
+    private void insertSlot(int offset) {
+        if ((_count + 1) * 2 > getSlotCount()) {
+            rehash();
+        }
+
+        int mask = getSlotCount() - 1;
+        int slot = hashEntry(offset) & mask;
+
+        while (_slots.getInt(slot * Integer.BYTES) != 0) {
+            slot = (slot + 1) & mask;
+        }
+
+        _slots.putInt(slot * Integer.BYTES, offset + 1);
+        _count++;
+    }
+
+    private void rehash() {
+        var old = _slots;
+
+        _slots = ByteBuffer.allocateDirect(old.capacity() * 2);
+        _count = 0;
+
+        for (int i = 0; i < old.capacity(); i += Integer.BYTES) {
+            int entry = old.getInt(i);
+
+            if (entry != 0) {
+                insertSlot(entry - 1);
+            }
+        }
+    }
+
+    private void ensureCapacity(int needed) throws IOException {
+        if ((long) _size + needed <= _data.capacity()) {
+            return;
+        }
+
+        long capacity = _data.capacity();
+
+        while (capacity < (long) _size + needed) {
+            capacity *= 2;
+        }
+
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IOException("Text dictionary exceeds the maximum size of 2 GiB.");
+        }
+
+        _data = _channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    private boolean matches(int offset, byte[] bytes) {
+        if (_data.getInt(offset) != bytes.length) {
+            return false;
+        }
+
+        for (int i = 0; i < bytes.length; i++) {
+            if (_data.get(offset + Integer.BYTES + i) != bytes[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private int hashEntry(int offset) {
+        int length = _data.getInt(offset);
+        int hash = 1;
+
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + _data.get(offset + Integer.BYTES + i);
+        }
+
+        return spread(hash);
+    }
+
+    private static int hash(byte[] bytes) {
+        int hash = 1;
+
+        for (var b : bytes) {
+            hash = 31 * hash + b;
+        }
+
+        return spread(hash);
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package LoadTest;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * LatencyHistogram.java (UTF-8)
+ * A histogram of latencies in microseconds with log-linear buckets like those of
+ * HdrHistogram, where each power of two is split into 64 buckets, so any value
+ * is kept within 1.6% of its size at a fixed cost of memory. Values can be
+ * recorded from many threads at once without locks.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int HALF_SUB_BUCKETS = 1 << (SUB_BUCKET_BITS - 1);
+    private static final int BUCKETS = HALF_SUB_BUCKETS * (64 - SUB_BUCKET_BITS + 2);
+    private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder _count = new LongAdder();
+    private final LongAdder _sum = new LongAdder();
+    private final AtomicLong _max = new AtomicLong();
+
+    /**
+     * Records a latency.
+     * @param nanos Latency in nanoseconds, which is kept in microseconds.
+     */
+    public void recordNanos(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+
+        _counts.incrementAndGet(indexOf(micros));
+        _count.increment();
+        _sum.add(micros);
+        _max.accumulateAndGet(micros, Math::max);
+    }
+
+    public long getCount() {
+        return _count.sum();
+    }
+
+    public double getMeanMillis() {
+        long count = _count.sum();
+        return count == 0 ? 0 : _sum.sum() / (double) count / 1000;
+    }
+
+    public double getMaxMillis() {
+        return _max.get() / 1000.0;
+    }
+
+    /**
+     * Gets the latency that a share of the values are at or below, which is the
+     * highest value of the bucket it falls in.
+     * @param percentile Share of the values from 0 to 100, for example, 99.9.
+     * @return Latency in milliseconds, or 0 if nothing was recorded.
+     */
+    public double getPercentileMillis(double percentile) {
+        long count = _count.sum();
+
+        if (count == 0) {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += _counts.get(i);
+
+            if (seen >= target) {
+                return Math.min(highestValueAt(i), _max.get()) / 1000.0;
+            }
+        }
+
+        return getMaxMillis();
+    }
+
+    /**
+     * Gets the summary of the histogram and its buckets that are not empty.
+     * @return The histogram as JSON, with latencies in milliseconds.
+     */
+    public JSONObject toJson() {
+        var buckets = new JSONArray();
+
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = _counts.get(i);
+
+            if (count > 0) {
+                buckets.put(new JSONArray().put(highestValueAt(i)).put(count));
+            }
+        }
+
+        return new JSONObject()
+                .put("count", getCount())
+                .put("mean", round(getMeanMillis()))
+                .put("p50", round(getPercentileMillis(50)))
+                .put("p90", round(getPercentileMillis(90)))
+                .put("p99", round(getPercentileMillis(99)))
+                .put("p999", round(getPercentileMillis(99.9)))
+                .put("max", round(getMaxMillis()))
+                .put("bucketsMicros", buckets);
+    }
+
+    /**
+     * Gets the bucket of a value, where values under 128 have their own bucket,
+     * and larger ones share a bucket with those that have the same 7 high bits.
+     */
+    private static int indexOf(long value) {
+        if (value < 2 * HALF_SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return exponent * HALF_SUB_BUCKETS + (int) (value >>> exponent);
+    }
+
+    private static long highestValueAt(int index) {
+        if (index < 2 * HALF_SUB_BUCKETS) {
+            return index;
+        }
+
+        int exponent = index / HALF_SUB_BUCKETS - 1;
+        long subBucket = index - exponent * HALF_SUB_BUCKETS;
+        return ((subBucket + 1) << exponent) - 1;
+    }
+
+    private static double round(double millis) {
+        return Math.round(millis * 1000) / 1000.0;
+    }
+}
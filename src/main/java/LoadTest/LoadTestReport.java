@@ -0,0 +1,234 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package LoadTest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * LoadTestReport.java (UTF-8)
+ * The results of a {@see LoadTestRunner} run, which are saved as JSON so a later
+ * run can be compared with them, and as an HTML page for people. A step or flow
+ * regresses if its p50 or p99 latency grows by more than the tolerance and at
+ * least a millisecond, or if its error rate grows by more than a percentage point.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public class LoadTestReport {
+
+    private static final List<String> COMPARED_PERCENTILES = List.of("p50", "p99");
+    private static final List<String> COLUMNS = List.of("count", "errorRate", "mean", "p50", "p90", "p99", "p999", "max");
+    private static final double MIN_REGRESSION_MILLIS = 1;
+    private static final double MAX_ERROR_RATE_INCREASE = 0.01;
+    private final JSONObject _json;
+
+    /**
+     * Constructions a new {@see LoadTestReport} instance.
+     * @param json Results of a run.
+     */
+    public LoadTestReport(JSONObject json) {
+        _json = json;
+    }
+
+    public JSONObject toJson() {
+        return _json;
+    }
+
+    public void writeJson(Path file) throws IOException {
+        Files.writeString(file, _json.toString(2));
+    }
+
+    /**
+     * Reads the results of an earlier run.
+     * @param file Path to a report saved with {@see #writeJson(Path)}.
+     * @return The results as JSON.
+     * @throws IOException
+     */
+    public static JSONObject readJson(Path file) throws IOException {
+        return new JSONObject(Files.readString(file));
+    }
+
+    /**
+     * Finds the steps and flows that got worse than in a baseline run. Those
+     * missing from either run are not compared.
+     * @param baseline Results of the baseline run.
+     * @param tolerance Share that a latency may grow by, for example, 0.1 for 10%.
+     * @return Regressions with the name, metric, baseline and current values.
+     */
+    public JSONArray compare(JSONObject baseline, double tolerance) {
+        var regressions = new JSONArray();
+
+        for (var section : List.of("flows", "steps")) {
+            var current = _json.getJSONObject(section);
+            var before = baseline.optJSONObject(section, new JSONObject());
+
+            for (var name : current.keySet()) {
+                if (!before.has(name)) {
+                    continue;
+                }
+
+                var now = current.getJSONObject(name);
+                var then = before.getJSONObject(name);
+
+                for (var percentile : COMPARED_PERCENTILES) {
+                    double nowMillis = now.getJSONObject("latency").optDouble(percentile, 0);
+                    double thenMillis = then.getJSONObject("latency").optDouble(percentile, 0);
+
+                    if (nowMillis > thenMillis * (1 + tolerance) && nowMillis - thenMillis >= MIN_REGRESSION_MILLIS) {
+                        regressions.put(regression(name, percentile, thenMillis, nowMillis));
+                    }
+                }
+
+                double nowErrors = now.optDouble("errorRate", 0);
+                double thenErrors = then.optDouble("errorRate", 0);
+
+                if (nowErrors - thenErrors > MAX_ERROR_RATE_INCREASE) {
+                    regressions.put(regression(name, "errorRate", thenErrors, nowErrors));
+                }
+            }
+        }
+
+        return regressions;
+    }
+
+    /**
+     * Writes the results as an HTML page, next to those of a baseline run if given.
+     * @param file Path of the page.
+     * @param baseline Results of the baseline run, if any.
+     * @param tolerance Share that a latency may grow by before it is highlighted.
+     * @throws IOException
+     */
+    public void writeHtml(Path file, Optional<JSONObject> baseline, double tolerance) throws IOException {
+        var regressed = new HashSet<String>();
+
+        baseline.ifPresent(before -> compare(before, tolerance).forEach(item -> {
+            var regression = (JSONObject) item;
+            regressed.add(regression.getString("name") + "/" + regression.getString("metric"));
+        }));
+
+        var scenario = _json.getJSONObject("scenario");
+        var html = new StringBuilder()
+                .append("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"UTF-8\">\n<title>")
+                .append(escape(scenario.optString("name"))).append(" load test</title>\n")
+                .append("<style>body{font-family:sans-serif;margin:2em}table{border-collapse:collapse;margin-bottom:2em}")
+                .append("th,td{border:1px solid #ccc;padding:4px 8px;text-align:right}th:first-child,td:first-child{text-align:left}")
+                .append(".worse{background:#f8d0d0}.delta{color:#666;font-size:smaller}</style>\n")
+                .append("</head>\n<body>\n<h1>").append(escape(scenario.optString("name"))).append("</h1>\n<p>")
+                .append("Started ").append(escape(_json.optString("startedAt")))
+                .append(", ").append(scenario.optDouble("rate")).append(" users/s for ")
+                .append(scenario.optDouble("durationSeconds")).append(" s after a ")
+                .append(scenario.optDouble("warmupSeconds")).append(" s warmup. Completed ")
+                .append(_json.optLong("completedFlows")).append(" flows at ")
+                .append(_json.optDouble("throughput")).append("/s with ")
+                .append(_json.optLong("failedFlows")).append(" failed. Latencies are in ms from the intended start.</p>\n");
+
+        baseline.ifPresent(before -> html.append("<p>Compared with the run started ")
+                .append(escape(before.optString("startedAt"))).append(".</p>\n"));
+
+        for (var section : List.of("flows", "steps")) {
+            appendTable(html, section, baseline.map(before -> before.optJSONObject(section, new JSONObject())), regressed);
+        }
+
+        html.append("</body>\n</html>\n");
+        Files.writeString(file, html.toString());
+    }
+
+    private void appendTable(StringBuilder html, String section, Optional<JSONObject> baseline,
+            Set<String> regressed) {
+
+        var current = _json.getJSONObject(section);
+
+        html.append("<h2>").append(section.equals("flows") ? "Flows" : "Steps").append("</h2>\n<table>\n<tr><th>Name</th>");
+        COLUMNS.forEach(column -> html.append("<th>").append(column).append("</th>"));
+        html.append("</tr>\n");
+
+        for (var name : new TreeSet<>(current.keySet())) {
+            var now = flatten(current.getJSONObject(name));
+            var then = baseline.map(before -> before.optJSONObject(name)).map(LoadTestReport::flatten);
+
+            html.append("<tr><td>").append(escape(name)).append("</td>");
+
+            for (var column : COLUMNS) {
+                double value = now.optDouble(column, 0);
+                var style = regressed.contains(name + "/" + column) ? " class=\"worse\"" : "";
+
+                html.append("<td").append(style).append(">").append(format(column, value));
+
+                if (then.isPresent() && then.get().has(column) && !column.equals("count")) {
+                    double delta = value - then.get().getDouble(column);
+                    html.append(" <span class=\"delta\">(").append(delta >= 0 ? "+" : "")
+                            .append(format(column, delta)).append(")</span>");
+                }
+
+                html.append("</td>");
+            }
+
+            html.append("</tr>\n");
+        }
+
+        html.append("</table>\n");
+    }
+
+    /**
+     * Puts the count, error rate and latencies of a step or flow in one object.
+     */
+    private static JSONObject flatten(JSONObject stats) {
+        var flat = new JSONObject()
+                .put("count", stats.optLong("count"))
+                .put("errorRate", stats.optDouble("errorRate", 0));
+        var latency = stats.optJSONObject("latency", new JSONObject());
+
+        COLUMNS.stream().filter(latency::has).forEach(column -> flat.put(column, latency.getDouble(column)));
+        return flat;
+    }
+
+    private static String format(String column, double value) {
+        if (column.equals("count")) {
+            return String.valueOf((long) value);
+        } else if (column.equals("errorRate")) {
+            return String.format("%.2f%%", value * 100);
+        }
+
+        return String.format("%.1f", value);
+    }
+
+    private static JSONObject regression(String name, String metric, double baseline, double current) {
+        return new JSONObject()
+                .put("name", name)
+                .put("metric", metric)
+                .put("baseline", baseline)
+                .put("current", current);
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;")
+                .replace("<", "&lt;")
+                .replace(">", "&gt;")
+                .replace("\"", "&quot;");
+    }
+}
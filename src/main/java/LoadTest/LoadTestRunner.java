@@ -0,0 +1,418 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package LoadTest;
+
+import EngineAPI.EngineHandle;
+import EngineAPI.QlikWebSocketClient;
+import Shared.Interfaces.AuthCertificate;
+import TicketAPI.TicketRequest;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * LoadTestRunner.java (UTF-8)
+ * Runs a {@see Scenario} as an open model, where virtual users arrive on a fixed
+ * schedule whether or not earlier ones are done, like real users do. Latencies
+ * are measured from when a user was scheduled to arrive, not from when it could
+ * start, so time spent waiting behind a slow system or for a free slot is counted
+ * instead of hidden, which avoids coordinated omission. Each later step of a flow
+ * is measured from the end of the step before it. Users that arrive during the
+ * warmup run but are not recorded.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public class LoadTestRunner {
+
+    private static final int MAX_ERROR_SAMPLES = 10;
+    private final Scenario _scenario;
+    private final AuthCertificate _qlikCert;
+    private final TicketRequest _ticketRequest;
+    private final Map<String, Stats> _steps = new ConcurrentHashMap<>();
+    private final Map<String, Stats> _flows = new ConcurrentHashMap<>();
+    private final AtomicLong _maxScheduleLagNanos = new AtomicLong();
+    private final Set<VirtualUser> _running = ConcurrentHashMap.newKeySet();
+    private volatile boolean _isStopped;
+
+    /**
+     * Constructions a new {@see LoadTestRunner} instance.
+     * @param scenario Scenario to run.
+     * @param qlikCert Qlik certificate used for the tickets and Engine sessions.
+     */
+    public LoadTestRunner(Scenario scenario, AuthCertificate qlikCert) {
+        _scenario = scenario;
+        _qlikCert = qlikCert;
+        _ticketRequest = scenario.getTarget("hostname")
+                .map(hostname -> new TicketRequest(hostname, scenario.getTarget("virtualProxyPrefix"), qlikCert))
+                .orElse(null);
+
+        // Lists the steps and flows in the order of the scenario.
+        for (var flow : scenario.getFlows()) {
+            _flows.put(flow.getName(), new Stats());
+            flow.getSteps().stream()
+                    .filter(step -> step.getAction() != Scenario.Action.THINK)
+                    .forEach(step -> _steps.putIfAbsent(step.getLabel(), new Stats()));
+        }
+    }
+
+    /**
+     * Runs the scenario on the calling thread, which schedules the arrivals,
+     * and waits for the users that are still running at the end.
+     * @return Report of the run.
+     * @throws InterruptedException If the run was interrupted.
+     */
+    public LoadTestReport run() throws InterruptedException {
+        var random = new SplittableRandom(_scenario.getSeed());
+        var slots = new Semaphore(_scenario.getMaxConcurrency());
+        long periodNanos = (long) (1_000_000_000L / _scenario.getRate());
+        long start = System.nanoTime();
+        long warmupEnd = start + _scenario.getWarmup().toNanos();
+        long end = warmupEnd + _scenario.getDuration().toNanos();
+        var startedAt = Instant.now();
+        long iteration = 0;
+
+        while (true) {
+            long intended = start + iteration * periodNanos;
+
+            if (intended >= end) {
+                break;
+            }
+
+            long wait;
+
+            // Parking can end early, and starting before the intended time would hide latency.
+            while ((wait = intended - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            slots.acquire(); // Later arrivals keep their schedule, so a full pool shows up as latency.
+            _maxScheduleLagNanos.accumulateAndGet(System.nanoTime() - intended, Math::max);
+
+            var flow = _scenario.pick(random.nextDouble());
+            var user = new VirtualUser(iteration, flow, intended, intended >= warmupEnd);
+
+            _running.add(user);
+            runFlow(user).whenComplete((done, ex) -> {
+                _running.remove(user);
+                slots.release();
+            });
+            iteration++;
+        }
+
+        var finished = slots.tryAcquire(_scenario.getMaxConcurrency(), getLongestFlowMillis(),
+                TimeUnit.MILLISECONDS);
+
+        // Users still running are not recorded anymore, and their sessions are closed.
+        _isStopped = true;
+        _running.forEach(user -> Optional.ofNullable(user.client).ifPresent(QlikWebSocketClient::close));
+
+        return new LoadTestReport(buildJson(startedAt, finished));
+    }
+
+    /**
+     * Gets the longest time a flow can take, which is when every step reaches
+     * its timeout, plus the think time.
+     */
+    private long getLongestFlowMillis() {
+        long longest = 0;
+
+        for (var flow : _scenario.getFlows()) {
+            long millis = 0;
+
+            for (var step : flow.getSteps()) {
+                millis += step.getAction() == Scenario.Action.THINK
+                        ? step.getInt("millis", 0) : _scenario.getStepTimeout().toMillis();
+            }
+
+            longest = Math.max(longest, millis);
+        }
+
+        return longest;
+    }
+
+    private CompletableFuture<Void> runFlow(VirtualUser user) {
+        CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+
+        for (var step : user.flow.getSteps()) {
+            chain = chain.thenCompose(done -> runStep(user, step));
+        }
+
+        return chain.handle((done, ex) -> {
+            long latency = System.nanoTime() - user.intendedStart;
+
+            if (user.isRecorded && !_isStopped) {
+                _flows.get(user.flow.getName()).record(latency, ex);
+            }
+
+            if (user.client != null) {
+                user.client.close();
+            }
+
+            return null;
+        });
+    }
+
+    /**
+     * Runs a step and records its latency from the end of the previous step,
+     * or from the arrival of the user for the first step.
+     */
+    private CompletableFuture<Void> runStep(VirtualUser user, Scenario.Step step) {
+        if (step.getAction() == Scenario.Action.THINK) {
+            return CompletableFuture.runAsync(() -> user.nextIntended = System.nanoTime(),
+                    CompletableFuture.delayedExecutor(step.getInt("millis", 0), TimeUnit.MILLISECONDS));
+        }
+
+        long intended = user.nextIntended;
+        CompletableFuture<?> action;
+
+        try {
+            action = execute(user, step);
+        } catch (Exception ex) {
+            action = CompletableFuture.failedFuture(ex);
+        }
+
+        return action.orTimeout(_scenario.getStepTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                .handle((result, ex) -> {
+                    long now = System.nanoTime();
+
+                    if (user.isRecorded && !_isStopped) {
+                        _steps.get(step.getLabel()).record(now - intended, ex);
+                    }
+
+                    user.nextIntended = now;
+
+                    if (ex != null) {
+                        throw ex instanceof CompletionException ? (CompletionException) ex : new CompletionException(ex);
+                    }
+
+                    return null;
+                });
+    }
+
+    private CompletableFuture<?> execute(VirtualUser user, Scenario.Step step) throws Exception {
+        switch (step.getAction()) {
+            case TICKET:
+                var userId = _scenario.getTarget("userPrefix").orElse("loadtest")
+                        + (user.number % _scenario.getUsers());
+
+                return _ticketRequest.getTicketAsync(_scenario.getTarget("userDirectory").get(), userId)
+                        .thenAccept(body -> {
+                            if (!body.contains("\"Ticket\"")) {
+                                throw new IllegalStateException("No ticket in the response.");
+                            }
+                        });
+            case CONNECT:
+                if (user.client != null) {
+                    user.client.close();
+                }
+
+                user.client = new QlikWebSocketClient(_scenario.getTarget("engineUrl").get(), _qlikCert);
+                user.doc = null;
+                user.objects.clear();
+                return user.client.connectAsync(_scenario.getStepTimeout());
+            case OPEN_DOC:
+                var appId = step.getString("appId", _scenario.getTarget("appId").orElse(null));
+
+                return user.client.openDoc(appId).thenAccept(doc -> user.doc = doc);
+            case GET_OBJECT:
+                return getObject(user, step.getString("objectId", null));
+            case GET_LAYOUT:
+                return getObject(user, step.getString("objectId", null))
+                        .thenCompose(object -> user.client.call("GetLayout", object.getHandle(), new JSONArray()));
+            case HYPERCUBE_PAGES:
+                return getObject(user, step.getString("objectId", null)).thenCompose(object -> {
+                    CompletableFuture<?> pages = CompletableFuture.completedFuture(null);
+                    var path = step.getString("path", "/qHyperCubeDef");
+                    int width = step.getInt("width", 1);
+                    int height = step.getInt("height", 1);
+
+                    for (int i = 0; i < step.getInt("pages", 1); i++) {
+                        int top = i * height;
+                        pages = pages.thenCompose(done ->
+                                user.client.getHyperCubeData(object, path, top, 0, width, height));
+                    }
+
+                    return pages;
+                });
+            case SELECT:
+                var values = new JSONArray();
+
+                for (var value : step.getArray("values")) {
+                    values.put(value instanceof Number
+                            ? new JSONObject().put("qIsNumeric", true).put("qNumber", value)
+                            : new JSONObject().put("qText", value.toString()));
+                }
+
+                return user.client.call("GetField", requireDoc(user).getHandle(),
+                        new JSONArray().put(step.getString("field", null)))
+                        .thenCompose(field -> user.client.call("SelectValues",
+                                QlikWebSocketClient.getReturnedHandle(field),
+                                new JSONArray().put(values).put(false).put(false)));
+            case CLEAR_ALL:
+                return user.client.call("ClearAll", requireDoc(user).getHandle(), new JSONArray().put(false));
+            case CALL:
+                var target = step.getString("handle", "doc");
+                var params = step.getArray("params");
+                var method = step.getString("method", null);
+
+                if (target.equals("global")) {
+                    return user.client.call(method, -1, params);
+                } else if (target.equals("doc")) {
+                    return user.client.call(method, requireDoc(user).getHandle(), params);
+                }
+
+                return getObject(user, target)
+                        .thenCompose(object -> user.client.call(method, object.getHandle(), params));
+            default:
+                throw new IllegalStateException("Unexpected action " + step.getAction() + ".");
+        }
+    }
+
+    /**
+     * Gets an object of the app once per user, so later steps reuse its handle.
+     */
+    private CompletableFuture<EngineHandle> getObject(VirtualUser user, String objectId) {
+        var object = user.objects.get(objectId);
+
+        if (object != null) {
+            return CompletableFuture.completedFuture(object);
+        }
+
+        return user.client.getObject(requireDoc(user), objectId).thenApply(handle -> {
+            user.objects.put(objectId, handle);
+            return handle;
+        });
+    }
+
+    private static EngineHandle requireDoc(VirtualUser user) {
+        if (user.doc == null) {
+            throw new IllegalStateException("The flow must open the app with openDoc first.");
+        }
+
+        return user.doc;
+    }
+
+    private JSONObject buildJson(Instant startedAt, boolean finished) {
+        double seconds = _scenario.getDuration().toMillis() / 1000.0;
+        var steps = new JSONObject();
+        var flows = new JSONObject();
+        long completed = 0;
+        long errors = 0;
+
+        for (var flow : _scenario.getFlows()) {
+            var stats = _flows.get(flow.getName());
+
+            flows.put(flow.getName(), stats.toJson());
+            completed += stats.histogram.getCount();
+            errors += stats.errors.sum();
+        }
+
+        for (var entry : _steps.entrySet()) {
+            steps.put(entry.getKey(), entry.getValue().toJson());
+        }
+
+        return new JSONObject()
+                .put("scenario", _scenario.toJson())
+                .put("startedAt", startedAt.toString())
+                .put("completedFlows", completed)
+                .put("failedFlows", errors)
+                .put("throughput", Math.round(completed / seconds * 100) / 100.0)
+                .put("maxScheduleLagMillis", _maxScheduleLagNanos.get() / 1_000_000)
+                .put("allFinished", finished)
+                .put("flows", flows)
+                .put("steps", steps);
+    }
+
+    /**
+     * The latencies and errors of a step or flow.
+     */
+    private static class Stats {
+
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+        private final Map<String, LongAdder> errorSamples = new ConcurrentHashMap<>();
+
+        void record(long latencyNanos, Throwable ex) {
+            histogram.recordNanos(latencyNanos);
+
+            if (ex != null) {
+                var cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                var message = cause.getClass().getSimpleName()
+                        + Optional.ofNullable(cause.getMessage()).map(text -> ": " + text).orElse("");
+
+                errors.increment();
+
+                if (errorSamples.size() < MAX_ERROR_SAMPLES || errorSamples.containsKey(message)) {
+                    errorSamples.computeIfAbsent(message, key -> new LongAdder()).increment();
+                }
+            }
+        }
+
+        JSONObject toJson() {
+            var samples = new JSONObject();
+            long count = histogram.getCount();
+
+            errorSamples.forEach((message, times) -> samples.put(message, times.sum()));
+
+            return new JSONObject()
+                    .put("count", count)
+                    .put("errors", errors.sum())
+                    .put("errorRate", count == 0 ? 0 : errors.sum() / (double) count)
+                    .put("errorSamples", samples)
+                    .put("latency", histogram.toJson());
+        }
+    }
+
+    /**
+     * The state of one arrival while it runs its flow.
+     */
+    private static class VirtualUser {
+
+        private final long number;
+        private final Scenario.Flow flow;
+        private final long intendedStart;
+        private final boolean isRecorded;
+        private final Map<String, EngineHandle> objects = new HashMap<>();
+        private volatile long nextIntended;
+        private volatile QlikWebSocketClient client;
+        private volatile EngineHandle doc;
+
+        VirtualUser(long number, Scenario.Flow flow, long intendedStart, boolean isRecorded) {
+            this.number = number;
+            this.flow = flow;
+            this.intendedStart = intendedStart;
+            this.isRecorded = isRecorded;
+            this.nextIntended = intendedStart;
+        }
+    }
+}
@@ -0,0 +1,404 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package LoadTest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Scenario.java (UTF-8)
+ * A load test read from a JSON file, where virtual users arrive at a fixed rate
+ * and each runs one of several flows picked by weight, for example:
+ * <pre>
+ * {
+ *   "name": "mixed",
+ *   "rate": 20, "durationSeconds": 300, "warmupSeconds": 30, "maxConcurrency": 200,
+ *   "target": {
+ *     "hostname": "qlik.example.com", "userDirectory": "LOADTEST", "users": 500,
+ *     "engineUrl": "wss://qlik.example.com:4747/app/", "appId": "..."
+ *   },
+ *   "certificate": { "clientCert": "client.pfx", "rootCert": "root.cer" },
+ *   "flows": [
+ *     { "name": "open", "weight": 70, "steps": [ { "action": "ticket" }, { "action": "openDoc" } ] },
+ *     { "name": "paging", "weight": 20, "steps": [ { "action": "openDoc" },
+ *         { "action": "hyperCubePages", "objectId": "abc", "width": 5, "height": 500, "pages": 4 } ] },
+ *     { "name": "select", "weight": 10, "steps": [ { "action": "openDoc" },
+ *         { "action": "select", "field": "Region", "values": ["North"] },
+ *         { "action": "think", "millis": 500 },
+ *         { "action": "getLayout", "objectId": "abc" }, { "action": "clearAll" } ] }
+ *   ]
+ * }
+ * </pre>
+ * The actions are ticket, connect, openDoc, getObject, getLayout, hyperCubePages,
+ * select, clearAll, call and think. Steps are reported by the flow name and their
+ * name or action, so a flow that repeats an action must name those steps. Flows
+ * that use the Engine get a connect step before their first Engine step if they
+ * do not have one, and close their session at the end. Paths of certificates
+ * are relative to the scenario file.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public class Scenario {
+
+    /**
+     * What a step does.
+     */
+    public enum Action {
+        TICKET("ticket", false),
+        CONNECT("connect", false),
+        OPEN_DOC("openDoc", true),
+        GET_OBJECT("getObject", true),
+        GET_LAYOUT("getLayout", true),
+        HYPERCUBE_PAGES("hyperCubePages", true),
+        SELECT("select", true),
+        CLEAR_ALL("clearAll", true),
+        CALL("call", true),
+        THINK("think", false);
+
+        private final String _name;
+        private final boolean _usesEngine;
+
+        Action(String name, boolean usesEngine) {
+            _name = name;
+            _usesEngine = usesEngine;
+        }
+
+        public String getName() {
+            return _name;
+        }
+
+        public boolean usesEngine() {
+            return _usesEngine;
+        }
+
+        static Action of(String name) {
+            for (var action : values()) {
+                if (action._name.equals(name)) {
+                    return action;
+                }
+            }
+
+            throw new IllegalArgumentException("Unknown action " + name + ".");
+        }
+    }
+
+    private final String _name;
+    private final double _rate;
+    private final Duration _duration;
+    private final Duration _warmup;
+    private final Duration _stepTimeout;
+    private final int _maxConcurrency;
+    private final long _seed;
+    private final JSONObject _target;
+    private final Path _clientCert;
+    private final Path _rootCert;
+    private final List<Flow> _flows;
+    private final int _totalWeight;
+
+    private Scenario(JSONObject json, Path baseDirectory) {
+        _name = json.optString("name", "scenario");
+        _rate = json.getDouble("rate");
+        _duration = Duration.ofMillis((long) (json.getDouble("durationSeconds") * 1000));
+        _warmup = Duration.ofMillis((long) (json.optDouble("warmupSeconds", 0) * 1000));
+        _stepTimeout = Duration.ofMillis((long) (json.optDouble("stepTimeoutSeconds", 30) * 1000));
+        _maxConcurrency = json.optInt("maxConcurrency", 1000);
+        _seed = json.optLong("seed", System.nanoTime());
+        _target = json.optJSONObject("target", new JSONObject());
+
+        var certificate = json.optJSONObject("certificate", new JSONObject());
+        _clientCert = certificate.has("clientCert") ? baseDirectory.resolve(certificate.getString("clientCert")) : null;
+        _rootCert = certificate.has("rootCert") ? baseDirectory.resolve(certificate.getString("rootCert")) : null;
+
+        if (_rate <= 0 || _duration.isZero() || _duration.isNegative() || _maxConcurrency < 1) {
+            throw new IllegalArgumentException("The rate, duration and maxConcurrency must be positive.");
+        }
+
+        var flows = new ArrayList<Flow>();
+        var flowsJson = json.getJSONArray("flows");
+        int totalWeight = 0;
+
+        for (int i = 0; i < flowsJson.length(); i++) {
+            var flow = new Flow(flowsJson.getJSONObject(i), this);
+            flows.add(flow);
+            totalWeight += flow.getWeight();
+        }
+
+        if (flows.isEmpty()) {
+            throw new IllegalArgumentException("The scenario has no flows.");
+        }
+
+        _flows = Collections.unmodifiableList(flows);
+        _totalWeight = totalWeight;
+    }
+
+    /**
+     * Reads a scenario from a JSON file.
+     * @param file Path to the scenario.
+     * @return The scenario.
+     * @throws IOException
+     * @throws IllegalArgumentException If the scenario is not valid.
+     */
+    public static Scenario load(Path file) throws IOException {
+        var baseDirectory = Optional.ofNullable(file.toAbsolutePath().getParent()).orElse(Path.of("."));
+        return parse(new JSONObject(Files.readString(file)), baseDirectory);
+    }
+
+    /**
+     * Reads a scenario from JSON.
+     * @param json Scenario as JSON.
+     * @param baseDirectory Directory that relative certificate paths are resolved against.
+     * @return The scenario.
+     * @throws IllegalArgumentException If the scenario is not valid.
+     */
+    public static Scenario parse(JSONObject json, Path baseDirectory) {
+        try {
+            return new Scenario(json, baseDirectory);
+        } catch (org.json.JSONException ex) {
+            throw new IllegalArgumentException("Invalid scenario: " + ex.getMessage(), ex);
+        }
+    }
+
+    public String getName() {
+        return _name;
+    }
+
+    public double getRate() {
+        return _rate;
+    }
+
+    public Duration getDuration() {
+        return _duration;
+    }
+
+    public Duration getWarmup() {
+        return _warmup;
+    }
+
+    public Duration getStepTimeout() {
+        return _stepTimeout;
+    }
+
+    public int getMaxConcurrency() {
+        return _maxConcurrency;
+    }
+
+    public long getSeed() {
+        return _seed;
+    }
+
+    public Optional<Path> getClientCert() {
+        return Optional.ofNullable(_clientCert);
+    }
+
+    public Optional<Path> getRootCert() {
+        return Optional.ofNullable(_rootCert);
+    }
+
+    public List<Flow> getFlows() {
+        return _flows;
+    }
+
+    /**
+     * Gets a setting of the target, like hostname, virtualProxyPrefix, userDirectory,
+     * userPrefix, engineUrl or appId.
+     * @param key Name of the setting.
+     * @return The value, or empty if not set.
+     */
+    public Optional<String> getTarget(String key) {
+        return Optional.ofNullable(_target.optString(key, null));
+    }
+
+    public int getUsers() {
+        return Math.max(1, _target.optInt("users", 100));
+    }
+
+    /**
+     * Picks a flow by weight.
+     * @param random Random number from 0 inclusive to 1 exclusive.
+     * @return The flow.
+     */
+    Flow pick(double random) {
+        double point = random * _totalWeight;
+
+        for (var flow : _flows) {
+            point -= flow.getWeight();
+
+            if (point < 0) {
+                return flow;
+            }
+        }
+
+        return _flows.get(_flows.size() - 1);
+    }
+
+    /**
+     * Summarizes the settings of the scenario for the report.
+     * @return The settings as JSON.
+     */
+    JSONObject toJson() {
+        var flows = new JSONObject();
+
+        _flows.forEach(flow -> flows.put(flow.getName(), flow.getWeight() * 100.0 / _totalWeight));
+
+        return new JSONObject()
+                .put("name", _name)
+                .put("rate", _rate)
+                .put("durationSeconds", _duration.toMillis() / 1000.0)
+                .put("warmupSeconds", _warmup.toMillis() / 1000.0)
+                .put("maxConcurrency", _maxConcurrency)
+                .put("seed", _seed)
+                .put("flowShares", flows);
+    }
+
+    /**
+     * A sequence of steps run by a virtual user.
+     */
+    public static class Flow {
+
+        private final String _name;
+        private final int _weight;
+        private final List<Step> _steps;
+
+        private Flow(JSONObject json, Scenario scenario) {
+            _name = json.getString("name");
+            _weight = json.optInt("weight", 1);
+
+            if (_weight <= 0) {
+                throw new IllegalArgumentException("Flow " + _name + " needs a positive weight.");
+            }
+
+            var steps = new ArrayList<Step>();
+            var labels = new HashSet<String>();
+            var stepsJson = json.getJSONArray("steps");
+            boolean connected = false;
+
+            for (int i = 0; i < stepsJson.length(); i++) {
+                var step = new Step(stepsJson.getJSONObject(i), this, scenario);
+
+                if (step.getAction() != Action.THINK && !labels.add(step.getLabel())) {
+                    throw new IllegalArgumentException("Step " + step.getLabel()
+                            + " is in the flow twice, so give the steps their own name.");
+                }
+
+                if (step.getAction().usesEngine() && !connected) {
+                    steps.add(new Step(new JSONObject().put("action", Action.CONNECT.getName()), this, scenario));
+                }
+
+                connected |= step.getAction() == Action.CONNECT || step.getAction().usesEngine();
+                steps.add(step);
+            }
+
+            if (steps.isEmpty()) {
+                throw new IllegalArgumentException("Flow " + _name + " has no steps.");
+            }
+
+            _steps = Collections.unmodifiableList(steps);
+        }
+
+        public String getName() {
+            return _name;
+        }
+
+        public int getWeight() {
+            return _weight;
+        }
+
+        public List<Step> getSteps() {
+            return _steps;
+        }
+    }
+
+    /**
+     * A step of a flow with the options of its action.
+     */
+    public static class Step {
+
+        private static final Map<Action, List<String>> REQUIRED = Map.of(
+                Action.GET_OBJECT, List.of("objectId"),
+                Action.GET_LAYOUT, List.of("objectId"),
+                Action.HYPERCUBE_PAGES, List.of("objectId", "width", "height"),
+                Action.SELECT, List.of("field", "values"),
+                Action.CALL, List.of("method"),
+                Action.THINK, List.of("millis"));
+        private final Action _action;
+        private final String _label;
+        private final JSONObject _options;
+
+        private Step(JSONObject json, Flow flow, Scenario scenario) {
+            _action = Action.of(json.getString("action"));
+            _label = flow.getName() + "." + json.optString("name", _action.getName());
+            _options = json;
+
+            for (var key : REQUIRED.getOrDefault(_action, List.of())) {
+                if (!json.has(key)) {
+                    throw new IllegalArgumentException("Step " + _label + " needs " + key + ".");
+                }
+            }
+
+            if (_action == Action.TICKET && (scenario.getTarget("hostname").isEmpty()
+                    || scenario.getTarget("userDirectory").isEmpty())) {
+                throw new IllegalArgumentException("Ticket steps need a hostname and userDirectory in the target.");
+            }
+
+            if ((_action == Action.CONNECT || _action.usesEngine()) && scenario.getTarget("engineUrl").isEmpty()) {
+                throw new IllegalArgumentException("Engine steps need an engineUrl in the target.");
+            }
+
+            if (_action == Action.OPEN_DOC && !json.has("appId") && scenario.getTarget("appId").isEmpty()) {
+                throw new IllegalArgumentException("Step " + _label + " needs an appId.");
+            }
+        }
+
+        public Action getAction() {
+            return _action;
+        }
+
+        /**
+         * Gets the name of the step in the report, which is the flow name and
+         * the step name or action, for example, open.ticket.
+         * @return Label of the step.
+         */
+        public String getLabel() {
+            return _label;
+        }
+
+        public String getString(String key, String defaultValue) {
+            return _options.optString(key, defaultValue);
+        }
+
+        public int getInt(String key, int defaultValue) {
+            return _options.optInt(key, defaultValue);
+        }
+
+        public JSONArray getArray(String key) {
+            return _options.optJSONArray(key, new JSONArray());
+        }
+    }
+}
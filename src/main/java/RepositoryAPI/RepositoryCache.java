@@ -0,0 +1,394 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package RepositoryAPI;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.json.JSONObject;
+
+/**
+ * RepositoryCache.java (UTF-8)
+ * A read-through cache of the entity listings of a {@see RepositoryClient}. A
+ * listing is fresh for a time to live, after which it is revalidated by asking
+ * the Repository Service how many entities match and whether any were modified
+ * after the newest modifiedDate in the cache, which only reads the full listing
+ * again if something changed. Concurrent requests for a listing that is not
+ * cached or is being revalidated share a single fetch.
+ * The cache is bounded by the number of entities it holds. New listings go to a
+ * small window first, and a listing leaving the window only replaces one in the
+ * main area if it was requested more often, which is estimated with a frequency
+ * sketch as in W-TinyLFU, so one-off queries do not push out the busy listings.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public class RepositoryCache {
+
+    private static final double WINDOW_SHARE = 0.01;
+    private final RepositoryClient _client;
+    private final long _ttlNanos;
+    private final long _windowCapacity;
+    private final long _mainCapacity;
+    private final LinkedHashMap<String, Entry> _window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Entry> _main = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch _sketch;
+    private long _windowWeight;
+    private long _mainWeight;
+    private final Map<String, CompletableFuture<Entry>> _fetches = new ConcurrentHashMap<>();
+    private final Map<String, Long> _generations = new HashMap<>(); // Bumped when a type is invalidated.
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    private final LongAdder _revalidations = new LongAdder();
+    private final LongAdder _notModified = new LongAdder();
+    private final LongAdder _evictions = new LongAdder();
+
+    /**
+     * Constructions a new {@see RepositoryCache} instance.
+     * @param client Client that reads the listings.
+     * @param ttl Time a listing is used without revalidating it.
+     * @param maximumEntities Number of entities the cache holds across all listings.
+     */
+    public RepositoryCache(RepositoryClient client, Duration ttl, long maximumEntities) {
+        _client = client;
+        _ttlNanos = ttl.toNanos();
+        _windowCapacity = Math.max(1, (long) (maximumEntities * WINDOW_SHARE));
+        _mainCapacity = Math.max(1, maximumEntities - _windowCapacity);
+        _sketch = new FrequencySketch((int) Math.min(1 << 20, Math.max(64, maximumEntities / 8)));
+    }
+
+    /**
+     * Gets the full entities of a type that match a filter from the cache, and
+     * reads or revalidates them first if needed.
+     * @param type Type of entity, for example, app, stream or user.
+     * @param filter Filter in the syntax of the Repository Service, or null for all.
+     * @return CompletableFuture with the entities, which must not be modified.
+     */
+    public CompletableFuture<List<JSONObject>> getFullAsync(String type, String filter) {
+        var key = type + "?" + (filter == null ? "" : filter);
+        Entry cached;
+        long generation;
+
+        synchronized (this) {
+            _sketch.increment(key);
+            cached = _window.containsKey(key) ? _window.get(key) : _main.get(key);
+            generation = _generations.getOrDefault(type, 0L);
+        }
+
+        if (cached != null && System.nanoTime() - cached.validatedTime < _ttlNanos) {
+            _hits.increment();
+            return CompletableFuture.completedFuture(cached.entities);
+        }
+
+        var fetch = new CompletableFuture<Entry>();
+        var running = _fetches.putIfAbsent(key, fetch);
+
+        if (running != null) {
+            _hits.increment(); // Served by a fetch that another request started.
+            return running.thenApply(entry -> entry.entities);
+        }
+
+        _misses.increment();
+
+        var update = cached == null ? load(type, filter) : revalidate(type, filter, cached);
+
+        update.whenComplete((entry, ex) -> {
+            if (ex == null) {
+                put(type, generation, key, entry);
+            }
+
+            _fetches.remove(key, fetch); // Before completing, so later requests see the cache.
+
+            if (ex == null) {
+                fetch.complete(entry);
+            } else {
+                fetch.completeExceptionally(ex);
+            }
+        });
+
+        return fetch.thenApply(entry -> entry.entities);
+    }
+
+    private CompletableFuture<Entry> load(String type, String filter) {
+        return _client.getFullAsync(type, filter)
+                .thenApply(entities -> new Entry(Collections.unmodifiableList(entities)));
+    }
+
+    /**
+     * Checks whether a listing changed by counting the entities that match, and
+     * those modified after the newest one that is cached. Deleted entities lower
+     * the count, and new or modified ones are counted as modified.
+     */
+    private CompletableFuture<Entry> revalidate(String type, String filter, Entry cached) {
+        if (cached.lastModified == null) {
+            return load(type, filter); // Entities of this type have no modifiedDate.
+        }
+
+        var modifiedFilter = (filter == null || filter.isBlank() ? "" : "(" + filter + ") and ")
+                + "modifiedDate gt '" + cached.lastModified + "'";
+
+        _revalidations.increment();
+
+        return _client.countAsync(type, filter)
+                .thenCombine(_client.countAsync(type, modifiedFilter), (count, modified) ->
+                        count == cached.entities.size() && modified == 0)
+                .thenCompose(isUnchanged -> {
+                    if (isUnchanged) {
+                        _notModified.increment();
+                        return CompletableFuture.completedFuture(new Entry(cached.entities));
+                    }
+
+                    return load(type, filter);
+                });
+    }
+
+    /**
+     * Adds a listing to the window, and moves the listings that no longer fit
+     * in it to the main area if they are requested more often than the ones
+     * they would replace. A listing whose type was invalidated while it was
+     * read is not added, since it may be stale.
+     */
+    private synchronized void put(String type, long generation, String key, Entry entry) {
+        if (_generations.getOrDefault(type, 0L) != generation) {
+            return;
+        }
+
+        var previous = _main.get(key);
+
+        if (previous != null) {
+            // Revalidated or reloaded listings that were admitted before stay in the main area.
+            _main.put(key, entry);
+            _mainWeight += entry.weight() - previous.weight();
+
+            var victims = _main.entrySet().iterator();
+
+            while (_mainWeight > _mainCapacity && _main.size() > 1) {
+                var victim = victims.next();
+
+                _mainWeight -= victim.getValue().weight();
+                victims.remove();
+                _evictions.increment();
+            }
+
+            return;
+        }
+
+        previous = _window.remove(key);
+
+        if (previous != null) {
+            _windowWeight -= previous.weight();
+        }
+
+        _window.put(key, entry);
+        _windowWeight += entry.weight();
+
+        while (_windowWeight > _windowCapacity && !_window.isEmpty()) {
+            var eldest = _window.entrySet().iterator().next();
+
+            _window.remove(eldest.getKey());
+            _windowWeight -= eldest.getValue().weight();
+            admit(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    private void admit(String key, Entry candidate) {
+        if (candidate.weight() > _mainCapacity) {
+            _evictions.increment();
+            return;
+        }
+
+        int frequency = _sketch.frequency(key);
+        Iterator<Map.Entry<String, Entry>> victims = _main.entrySet().iterator();
+        long freed = 0;
+        int evicted = 0;
+
+        // Checks first that enough less frequent listings can make room.
+        while (_mainWeight - freed + candidate.weight() > _mainCapacity) {
+            var victim = victims.next();
+
+            if (_sketch.frequency(victim.getKey()) >= frequency) {
+                _evictions.increment(); // The candidate is rejected.
+                return;
+            }
+
+            freed += victim.getValue().weight();
+            evicted++;
+        }
+
+        victims = _main.entrySet().iterator();
+
+        for (int i = 0; i < evicted; i++) {
+            victims.next();
+            victims.remove();
+            _evictions.increment();
+        }
+
+        _mainWeight += candidate.weight() - freed;
+        _main.put(key, candidate);
+    }
+
+    /**
+     * Removes the cached listings of a type, for example, after changing its entities.
+     * Listings of the type that are being read are not cached when they arrive,
+     * and later requests read them again.
+     * @param type Type of entity.
+     */
+    public synchronized void invalidate(String type) {
+        var prefix = type + "?";
+
+        _generations.merge(type, 1L, Long::sum);
+        _fetches.keySet().removeIf(key -> key.startsWith(prefix));
+
+        for (var area : List.of(_window, _main)) {
+            var entries = area.entrySet().iterator();
+
+            while (entries.hasNext()) {
+                var entry = entries.next();
+
+                if (entry.getKey().startsWith(prefix)) {
+                    if (area == _window) {
+                        _windowWeight -= entry.getValue().weight();
+                    } else {
+                        _mainWeight -= entry.getValue().weight();
+                    }
+
+                    entries.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the hits, misses, revalidations, revalidations that found no change,
+     * evictions and number of cached entities.
+     * @return Metrics of the cache as JSON.
+     */
+    public synchronized JSONObject getStats() {
+        return new JSONObject()
+                .put("hits", _hits.sum())
+                .put("misses", _misses.sum())
+                .put("revalidations", _revalidations.sum())
+                .put("notModified", _notModified.sum())
+                .put("evictions", _evictions.sum())
+                .put("listings", _window.size() + _main.size())
+                .put("entities", _windowWeight + _mainWeight);
+    }
+
+    /**
+     * A cached listing.
+     */
+    private static class Entry {
+
+        private final List<JSONObject> entities;
+        private final String lastModified; // Newest modifiedDate, which is an ISO 8601 timestamp.
+        private final long validatedTime = System.nanoTime();
+
+        Entry(List<JSONObject> entities) {
+            this.entities = entities;
+
+            String newest = null;
+
+            for (var entity : entities) {
+                var modified = entity.optString("modifiedDate", null);
+
+                if (modified == null) {
+                    newest = null;
+                    break;
+                }
+
+                if (newest == null || modified.compareTo(newest) > 0) {
+                    newest = modified;
+                }
+            }
+
+            this.lastModified = newest;
+        }
+
+        long weight() {
+            return Math.max(1, entities.size());
+        }
+    }
+
+    /**
+     * Estimates how often keys were requested with four rows of 4-bit counters,
+     * where the smallest counter of a key is its estimate. All counters are
+     * halved after a number of increments, so old popularity fades.
+     */
+    private static class FrequencySketch {
+
+        private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+        private final byte[][] counters;
+        private final int mask;
+        private final int resetSize;
+        private int increments;
+
+        FrequencySketch(int width) {
+            int size = Integer.highestOneBit(width - 1) << 1;
+
+            counters = new byte[SEEDS.length][size];
+            mask = size - 1;
+            resetSize = size * 10;
+        }
+
+        void increment(String key) {
+            int hash = key.hashCode();
+
+            for (int i = 0; i < SEEDS.length; i++) {
+                int index = index(hash, i);
+
+                if (counters[i][index] < 15) {
+                    counters[i][index]++;
+                }
+            }
+
+            if (++increments >= resetSize) {
+                for (var row : counters) {
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] >>= 1;
+                    }
+                }
+
+                increments /= 2;
+            }
+        }
+
+        int frequency(String key) {
+            int hash = key.hashCode();
+            int frequency = Integer.MAX_VALUE;
+
+            for (int i = 0; i < SEEDS.length; i++) {
+                frequency = Math.min(frequency, counters[i][index(hash, i)]);
+            }
+
+            return frequency;
+        }
+
+        private int index(int hash, int row) {
+            int h = hash * SEEDS[row];
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package RepositoryAPI;
+
+import Shared.AllowlistHostnameVerifier;
+import Shared.HttpClientPool;
+import Shared.Interfaces.AuthCertificate;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyManagementException;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.UnrecoverableKeyException;
+import java.security.cert.CertificateException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * RepositoryClient.java (UTF-8)
+ * An example of a class that reads entities like apps, streams and users from
+ * the Qlik Sense Repository Service in bulk. Filters are sent to the service, so
+ * only matching entities are transferred, and large results are read in pages
+ * that are fetched in parallel. Entities are parsed from the response as it
+ * arrives and passed to the caller one at a time, so a result never has to be
+ * held in memory as a whole. Requests share the HTTP client of the certificate
+ * with {@see TicketAPI.TicketRequest}. They go to the port of the service itself,
+ * which has no virtual proxies, and are authenticated by the certificate alone.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public class RepositoryClient {
+
+    private static final String XRFKEY = "1234567890123456"; // Xrfkey to prevent CSRF attacks.
+    private static final String DEFAULT_USER = "UserDirectory=INTERNAL; UserId=sa_repository";
+    private static final int DEFAULT_PAGE_SIZE = 500;
+    private static final int DEFAULT_PARALLELISM = 4;
+    // Parses the pages, which blocks until each response has fully arrived, so
+    // it is kept off the common pool. Idle threads end after a minute.
+    private static final Executor READERS = Executors.newCachedThreadPool(runnable -> {
+        var thread = new Thread(runnable, "repository-reader");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final String _apiUrl;
+    private final AuthCertificate _qlikCert;
+    private final AllowlistHostnameVerifier _hostnameVerifier;
+    private final String _user;
+    private final int _pageSize;
+    private final int _parallelism;
+
+    /**
+     * Constructions a new {@see RepositoryClient} instance that reads as the
+     * repository service account.
+     * @param hostname Hostname of the Qlik Sense server used for requests.
+     * @param qlikCert Qlik certificate used for authentication.
+     */
+    public RepositoryClient(String hostname, AuthCertificate qlikCert) {
+        this(hostname, qlikCert, AllowlistHostnameVerifier.strict(),
+                DEFAULT_USER, DEFAULT_PAGE_SIZE, DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * Constructions a new {@see RepositoryClient} instance.
+     * @param hostname Hostname of the Qlik Sense server used for requests.
+     * @param qlikCert Qlik certificate used for authentication.
+     * @param hostnameVerifier Allowlist of hostnames that are not in the server's certificate.
+     * @param user User the requests are made as, for example, "UserDirectory=INTERNAL; UserId=sa_repository".
+     * @param pageSize Number of entities per page.
+     * @param parallelism Number of pages fetched at the same time.
+     */
+    public RepositoryClient(String hostname, AuthCertificate qlikCert, AllowlistHostnameVerifier hostnameVerifier,
+            String user, int pageSize, int parallelism) {
+
+        _apiUrl = String.format("https://%1$s:4242/qrs/", hostname);
+        _qlikCert = qlikCert;
+        _hostnameVerifier = hostnameVerifier;
+        _user = user;
+        _pageSize = Math.max(1, pageSize);
+        _parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Counts the entities of a type that match a filter.
+     * @param type Type of entity, for example, app, stream or user.
+     * @param filter Filter in the syntax of the Repository Service, for example,
+     * "stream.name eq 'Everyone'", or null to count all.
+     * @return CompletableFuture with the number of entities.
+     */
+    public CompletableFuture<Integer> countAsync(String type, String filter) {
+        return sendAsync(buildUri(type + "/count", filter, null), HttpResponse.BodyHandlers.ofString())
+                .thenApply(response -> new JSONObject(response.body()).getInt("value"));
+    }
+
+    /**
+     * Streams the full entities of a type that match a filter. The result is
+     * counted first and then read in pages ordered by id, several at a time.
+     * Entities of a page keep their order, but those of pages read at the same
+     * time can be interleaved, and the consumer is never called by two threads at once.
+     * @param type Type of entity, for example, app, stream or user.
+     * @param filter Filter in the syntax of the Repository Service, for example,
+     * "published eq true", or null to read all.
+     * @param consumer Receives each entity.
+     * @return CompletableFuture with the number of entities passed to the consumer,
+     * which completes after the last one.
+     */
+    public CompletableFuture<Integer> streamFullAsync(String type, String filter, Consumer<JSONObject> consumer) {
+        var synchronizedConsumer = new Consumer<JSONObject>() {
+            @Override
+            public synchronized void accept(JSONObject entity) {
+                consumer.accept(entity);
+            }
+        };
+
+        return countAsync(type, filter).thenCompose(count -> {
+            int pages = (count + _pageSize - 1) / _pageSize;
+            var nextPage = new AtomicInteger();
+            var streamed = new AtomicInteger();
+            var workers = new ArrayList<CompletableFuture<Void>>();
+
+            for (int i = 0; i < Math.min(_parallelism, pages); i++) {
+                workers.add(fetchPages(type, filter, pages, nextPage, streamed, synchronizedConsumer));
+            }
+
+            return CompletableFuture.allOf(workers.toArray(new CompletableFuture<?>[0]))
+                    .thenApply(done -> streamed.get());
+        });
+    }
+
+    /**
+     * Reads the full entities of a type that match a filter into a list.
+     * @param type Type of entity, for example, app, stream or user.
+     * @param filter Filter in the syntax of the Repository Service, or null to read all.
+     * @return CompletableFuture with the entities.
+     */
+    public CompletableFuture<List<JSONObject>> getFullAsync(String type, String filter) {
+        var entities = Collections.synchronizedList(new ArrayList<JSONObject>());
+
+        return streamFullAsync(type, filter, entities::add).thenApply(count -> entities);
+    }
+
+    /**
+     * Fetches the next page until there are none left, so each call keeps one
+     * page in flight.
+     */
+    private CompletableFuture<Void> fetchPages(String type, String filter, int pages, AtomicInteger nextPage,
+            AtomicInteger streamed, Consumer<JSONObject> consumer) {
+
+        int page = nextPage.getAndIncrement();
+
+        if (page >= pages) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        var paging = String.format("orderby=id&skip=%1$d&take=%2$d", page * _pageSize, _pageSize);
+
+        return sendAsync(buildUri(type + "/full", filter, paging), HttpResponse.BodyHandlers.ofInputStream())
+                .thenAcceptAsync(response -> streamed.addAndGet(readArray(response.body(), consumer)), READERS)
+                .thenCompose(done -> fetchPages(type, filter, pages, nextPage, streamed, consumer));
+    }
+
+    /**
+     * Parses a JSON array from a stream one element at a time.
+     * @param body Stream of the response.
+     * @param consumer Receives each element.
+     * @return Number of elements.
+     */
+    private static int readArray(InputStream body, Consumer<JSONObject> consumer) {
+        int count = 0;
+
+        try (var reader = new InputStreamReader(body, StandardCharsets.UTF_8)) {
+            var tokener = new JSONTokener(reader);
+
+            if (tokener.nextClean() != '[') {
+                throw tokener.syntaxError("Expected an array of entities");
+            }
+
+            char next = tokener.nextClean();
+
+            while (next != ']') {
+                tokener.back();
+                consumer.accept(new JSONObject(tokener));
+                count++;
+                next = tokener.nextClean();
+
+                if (next == ',') {
+                    next = tokener.nextClean();
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        return count;
+    }
+
+    private URI buildUri(String path, String filter, String query) {
+        var sb = new StringBuilder(_apiUrl).append(path).append("?xrfkey=").append(XRFKEY);
+
+        if (filter != null && !filter.isBlank()) {
+            sb.append("&filter=").append(URLEncoder.encode(filter, StandardCharsets.UTF_8).replace("+", "%20"));
+        }
+
+        if (query != null) {
+            sb.append('&').append(query);
+        }
+
+        return URI.create(sb.toString());
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> sendAsync(URI uri, HttpResponse.BodyHandler<T> bodyHandler) {
+        HttpClient client;
+
+        try {
+            client = HttpClientPool.get(_qlikCert, _hostnameVerifier);
+        } catch (KeyStoreException | IOException | CertificateException | NoSuchAlgorithmException
+                | UnrecoverableKeyException | KeyManagementException ex) {
+
+            return CompletableFuture.failedFuture(ex);
+        }
+
+        var request = HttpRequest.newBuilder()
+            .uri(uri)
+            .timeout(Duration.ofSeconds(30))
+            .header("X-Qlik-xrfkey", XRFKEY)
+            .header("X-Qlik-User", _user)
+            .header("Accept", "application/json")
+            .GET()
+            .build();
+
+        return client.sendAsync(request, bodyHandler)
+                .thenApply(RepositoryClient::checkStatus);
+    }
+
+    private static <T> HttpResponse<T> checkStatus(HttpResponse<T> response) {
+        if (response.statusCode() / 100 != 2) {
+            if (response.body() instanceof InputStream) {
+                try {
+                    ((InputStream) response.body()).close();
+                } catch (IOException ex) {
+                    // Nothing else to do since the response is discarded.
+                }
+            }
+
+            throw new IllegalStateException(String.format("Repository request %1$s failed with status %2$d.",
+                    response.uri().getPath(), response.statusCode()));
+        }
+
+        return response;
+    }
+}
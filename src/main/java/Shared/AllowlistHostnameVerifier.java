@@ -0,0 +1,212 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Shared;
+
+import java.security.cert.CertificateParsingException;
+import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
+
+/**
+ * AllowlistHostnameVerifier.java (UTF-8)
+ * A hostname verifier that is set per client instead of globally. When the target
+ * hostname is not listed in the server's certificate SAN field, only the hostnames
+ * in the allowlist are let through. Entries can be exact hostnames or IP addresses,
+ * for example, "localhost", or a wildcard for a domain like "*.domain.local".
+ * See https://support.qlik.com/articles/000078616 for more info.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public class AllowlistHostnameVerifier implements HostnameVerifier {
+
+    private static final int SAN_DNS_NAME = 2;
+    private static final int SAN_IP_ADDRESS = 7;
+    private final Set<String> _allowlist;
+    private final boolean _allowAll;
+    // Hostnames that matched the allowlist, so matching is only done once per hostname.
+    private final Set<String> _allowedHostnames = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Constructions a new {@see AllowlistHostnameVerifier} instance.
+     * @param allowlist Hostnames that are allowed even if they are not in the
+     * server's certificate, which can be empty to allow none.
+     */
+    public AllowlistHostnameVerifier(Collection<String> allowlist) {
+        this(allowlist, false);
+    }
+
+    private AllowlistHostnameVerifier(Collection<String> allowlist, boolean allowAll) {
+        _allowlist = allowlist.stream()
+                .map(hostname -> hostname.toLowerCase(Locale.ROOT))
+                .collect(Collectors.toUnmodifiableSet());
+        _allowAll = allowAll;
+    }
+
+    /**
+     * Gets a verifier that only allows the hostnames listed in the server's
+     * certificate, which is what clients use unless they are given an allowlist.
+     * @return A verifier with an empty allowlist.
+     */
+    public static AllowlistHostnameVerifier strict() {
+        return new AllowlistHostnameVerifier(List.of(), false);
+    }
+
+    /**
+     * Gets a verifier that allows every hostname, which was the behavior of these
+     * examples before the allowlist existed. Only use it for testing.
+     * @return A verifier that allows all hostnames.
+     */
+    public static AllowlistHostnameVerifier allowingAll() {
+        return new AllowlistHostnameVerifier(List.of(), true);
+    }
+
+    /**
+     * Checks whether this verifier only allows hostnames listed in the server's certificate.
+     * @return True if the allowlist is empty, and false if not.
+     */
+    public boolean isStrict() {
+        return !_allowAll && _allowlist.isEmpty();
+    }
+
+    /**
+     * Checks whether a hostname is allowed without checking the server's certificate.
+     * @param hostname Hostname to check.
+     * @return True if the hostname is in the allowlist, and false if not.
+     */
+    public boolean isAllowlisted(String hostname) {
+        if (_allowAll) {
+            return true;
+        }
+
+        if (hostname == null) {
+            return false;
+        }
+
+        var host = hostname.toLowerCase(Locale.ROOT);
+
+        if (_allowedHostnames.contains(host)) {
+            return true;
+        }
+
+        boolean isAllowed = _allowlist.contains(host) || _allowlist.stream()
+                .anyMatch(entry -> matchesWildcard(entry, host));
+
+        if (isAllowed) {
+            _allowedHostnames.add(host);
+        }
+
+        return isAllowed;
+    }
+
+    /**
+     * Verifies a hostname against the allowlist first, and then against the SAN
+     * field of the server's certificate. HttpsURLConnection only calls this when
+     * its own check failed, but other clients can use it for the full check.
+     * @param hostname Hostname that was connected to.
+     * @param session Session of the TLS connection.
+     * @return True if the hostname is allowed, and false if not.
+     */
+    @Override
+    public boolean verify(String hostname, SSLSession session) {
+        return isAllowlisted(hostname) || matchesCertificate(hostname, session);
+    }
+
+    /**
+     * Checks whether another verifier allows the same hostnames, so both can
+     * share an HTTP client.
+     * @param other Object to compare with.
+     * @return True if the allowlists are the same, and false if not.
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+
+        if (!(other instanceof AllowlistHostnameVerifier)) {
+            return false;
+        }
+
+        var verifier = (AllowlistHostnameVerifier) other;
+        return _allowAll == verifier._allowAll && _allowlist.equals(verifier._allowlist);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(_allowlist, _allowAll);
+    }
+
+    /**
+     * Checks whether a hostname is listed in the SAN field of the server's certificate.
+     * @param hostname Hostname that was connected to.
+     * @param session Session of the TLS connection.
+     * @return True if the certificate lists the hostname, and false if not.
+     */
+    private static boolean matchesCertificate(String hostname, SSLSession session) {
+        try {
+            var certificate = (X509Certificate) session.getPeerCertificates()[0];
+            var names = certificate.getSubjectAlternativeNames();
+            var host = hostname.toLowerCase(Locale.ROOT);
+
+            if (names == null) {
+                return false;
+            }
+
+            for (var name : names) {
+                int type = (Integer) name.get(0);
+                var value = ((String) name.get(1)).toLowerCase(Locale.ROOT);
+
+                if ((type == SAN_IP_ADDRESS && value.equals(host)) || (type == SAN_DNS_NAME
+                        && (value.equals(host) || matchesWildcard(value, host)))) {
+                    return true;
+                }
+            }
+        } catch (SSLPeerUnverifiedException | CertificateParsingException | ClassCastException ex) {
+            return false;
+        }
+
+        return false;
+    }
+
+    /**
+     * Matches a hostname against a pattern with a wildcard for the leftmost label only.
+     * @param pattern Pattern like *.domain.local.
+     * @param host Lower case hostname to match.
+     * @return True if the pattern matches, and false if not.
+     */
+    private static boolean matchesWildcard(String pattern, String host) {
+        if (!pattern.startsWith("*.")) {
+            return false;
+        }
+
+        var suffix = pattern.substring(1); // Keeps the dot.
+        int labelEnd = host.indexOf('.');
+
+        return labelEnd > 0 && host.substring(labelEnd).equals(suffix);
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Shared;
+
+import java.net.Socket;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.X509ExtendedTrustManager;
+
+/**
+ * AllowlistTrustManager.java (UTF-8)
+ * Checks the certificate chain of servers like the trust manager it wraps, but
+ * without the hostname check for hosts in the allowlist of a verifier. This
+ * happens during the handshake of the connection, so it works for clients like
+ * {@see java.net.http.HttpClient} that have no per-client hostname verifier, and
+ * nothing is sent to a host before it is verified. Other hosts get the usual check.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+final class AllowlistTrustManager extends X509ExtendedTrustManager {
+
+    private final X509ExtendedTrustManager _trustManager;
+    private final AllowlistHostnameVerifier _hostnameVerifier;
+
+    /**
+     * Constructions a new {@see AllowlistTrustManager} instance.
+     * @param trustManager Trust manager with the root certificates.
+     * @param hostnameVerifier Verifier with the hosts that skip the hostname check.
+     */
+    AllowlistTrustManager(X509ExtendedTrustManager trustManager, AllowlistHostnameVerifier hostnameVerifier) {
+        _trustManager = trustManager;
+        _hostnameVerifier = hostnameVerifier;
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket)
+            throws CertificateException {
+
+        var host = socket instanceof SSLSocket && ((SSLSocket) socket).getHandshakeSession() != null
+                ? ((SSLSocket) socket).getHandshakeSession().getPeerHost() : null;
+
+        if (_hostnameVerifier.isAllowlisted(host)) {
+            _trustManager.checkServerTrusted(chain, authType); // Checks the chain only.
+        } else {
+            _trustManager.checkServerTrusted(chain, authType, socket);
+        }
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine)
+            throws CertificateException {
+
+        if (_hostnameVerifier.isAllowlisted(engine == null ? null : engine.getPeerHost())) {
+            _trustManager.checkServerTrusted(chain, authType); // Checks the chain only.
+        } else {
+            _trustManager.checkServerTrusted(chain, authType, engine);
+        }
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+        _trustManager.checkServerTrusted(chain, authType);
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket)
+            throws CertificateException {
+
+        _trustManager.checkClientTrusted(chain, authType, socket);
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine)
+            throws CertificateException {
+
+        _trustManager.checkClientTrusted(chain, authType, engine);
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+        _trustManager.checkClientTrusted(chain, authType);
+    }
+
+    @Override
+    public X509Certificate[] getAcceptedIssuers() {
+        return _trustManager.getAcceptedIssuers();
+    }
+}
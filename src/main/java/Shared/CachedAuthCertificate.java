@@ -0,0 +1,301 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Shared;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.security.KeyManagementException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.UnrecoverableKeyException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509ExtendedTrustManager;
+import Shared.Interfaces.AuthCertificate;
+
+/**
+ * CachedAuthCertificate.java (UTF-8)
+ * The base of the certificates that build their {@see SSLContext} once and then
+ * reuse it. Subclasses only say where the client key and the trusted root
+ * certificates come from, for example, files, memory or a PKCS#11 token, and
+ * {@see #prepare()} loads both in parallel while the TLS provider and cipher
+ * suites are initialized, so no key material is read again after the first use.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public abstract class CachedAuthCertificate implements AuthCertificate {
+
+    private static final Executor LOADER = Executors.newCachedThreadPool(runnable -> {
+        var thread = new Thread(runnable, "certificate-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private CompletableFuture<SSLContext> _context;
+    private CompletableFuture<KeyManager[]> _keyManagers;
+    private CompletableFuture<TrustManager[]> _trustManagers;
+
+    /**
+     * Loads the key store with the private key and certificate chain of the client.
+     * @return A key store with the client certificate.
+     * @throws Exception If the key material cannot be read.
+     */
+    protected abstract KeyStore loadKeyStore() throws Exception;
+
+    /**
+     * Gets the password that protects the private key in {@see #loadKeyStore()}.
+     * @return Password of the key, or null if the key store needs none.
+     */
+    protected abstract char[] getKeyPassword();
+
+    /**
+     * Loads the key store with the root certificates that the server is checked against.
+     * @return A key store with the trusted certificates.
+     * @throws Exception If the certificates cannot be read.
+     */
+    protected abstract KeyStore loadTrustStore() throws Exception;
+
+    /**
+     * Configures the needed certificates to validate the identity of the HTTPS
+     * server against a list of trusted certificates and to authenticate to the
+     * HTTPS server using a private key. The context is built on the first call,
+     * or taken from {@see #prepare()} if it was called before.
+     * @return An initialized secure socket context for TLS/SSL connections.
+     * @throws KeyStoreException
+     * @throws IOException
+     * @throws CertificateException
+     * @throws NoSuchAlgorithmException
+     * @throws UnrecoverableKeyException
+     * @throws KeyManagementException
+     */
+    @Override
+    public SSLContext getSSLContext()
+            throws KeyStoreException, IOException, CertificateException,
+                NoSuchAlgorithmException, UnrecoverableKeyException,
+                KeyManagementException {
+
+        try {
+            return prepare().get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading the certificates.");
+        } catch (ExecutionException ex) {
+            var cause = ex.getCause();
+
+            if (cause instanceof KeyStoreException) {
+                throw (KeyStoreException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof CertificateException) {
+                throw (CertificateException) cause;
+            } else if (cause instanceof NoSuchAlgorithmException) {
+                throw (NoSuchAlgorithmException) cause;
+            } else if (cause instanceof UnrecoverableKeyException) {
+                throw (UnrecoverableKeyException) cause;
+            } else if (cause instanceof KeyManagementException) {
+                throw (KeyManagementException) cause;
+            }
+
+            throw new KeyManagementException(cause);
+        }
+    }
+
+    /**
+     * Starts building the context in the background if it was not built yet, or
+     * if building it failed before. The client key and the root certificates
+     * are loaded in parallel, while the TLS provider is initialized, and the
+     * cipher suites are set up once the context is ready, so the first
+     * connection only does its handshake.
+     * @return CompletableFuture with the context, which is shared by every call.
+     */
+    @Override
+    public synchronized CompletableFuture<SSLContext> prepare() {
+        if (_context != null && !_context.isCompletedExceptionally()) {
+            return _context;
+        }
+
+        var keyManagers = loadAsync(() -> {
+            var kmf = KeyManagerFactory.getInstance("SunX509");
+            kmf.init(loadKeyStore(), getKeyPassword());
+            return kmf.getKeyManagers();
+        });
+        var trustManagers = loadAsync(() -> {
+            var tmf = TrustManagerFactory.getInstance("SunX509");
+            tmf.init(loadTrustStore());
+            return tmf.getTrustManagers();
+        });
+        var emptyContext = loadAsync(() -> SSLContext.getInstance(PROTOCOL));
+
+        _keyManagers = keyManagers;
+        _trustManagers = trustManagers;
+        _context = CompletableFuture.allOf(keyManagers, trustManagers, emptyContext).thenApply(loaded -> {
+            var context = emptyContext.join();
+
+            try {
+                context.init(keyManagers.join(), trustManagers.join(), new SecureRandom());
+            } catch (KeyManagementException ex) {
+                throw new CompletionException(ex);
+            }
+
+            // Sets up the cipher suites and socket factory before the first connection.
+            context.createSSLEngine().getSupportedCipherSuites();
+            context.getSocketFactory();
+            return context;
+        });
+
+        return _context;
+    }
+
+    /**
+     * Builds a context with the same key material, whose check of the server
+     * lets the hosts in the allowlist of a verifier through during the handshake
+     * even if they are not in the server's certificate. The chain is still checked
+     * against the root certificates, and other hosts get the usual hostname check,
+     * so nothing changes for the rest of the JVM.
+     * @param hostnameVerifier Verifier with the allowlist.
+     * @return A new context for the verifier, or the shared one if the verifier is strict.
+     * @throws KeyStoreException
+     * @throws IOException
+     * @throws CertificateException
+     * @throws NoSuchAlgorithmException
+     * @throws UnrecoverableKeyException
+     * @throws KeyManagementException
+     */
+    public SSLContext getSSLContext(AllowlistHostnameVerifier hostnameVerifier)
+            throws KeyStoreException, IOException, CertificateException,
+                NoSuchAlgorithmException, UnrecoverableKeyException,
+                KeyManagementException {
+
+        var shared = getSSLContext(); // Loads the key material if needed.
+
+        if (hostnameVerifier.isStrict()) {
+            return shared;
+        }
+
+        KeyManager[] keyManagers;
+        TrustManager[] trustManagers;
+
+        synchronized (this) {
+            keyManagers = _keyManagers.join();
+            trustManagers = _trustManagers.join().clone();
+        }
+
+        for (int i = 0; i < trustManagers.length; i++) {
+            if (trustManagers[i] instanceof X509ExtendedTrustManager) {
+                trustManagers[i] = new AllowlistTrustManager((X509ExtendedTrustManager) trustManagers[i],
+                        hostnameVerifier);
+            }
+        }
+
+        var context = SSLContext.getInstance(PROTOCOL);
+
+        context.init(keyManagers, trustManagers, new SecureRandom());
+        return context;
+    }
+
+    /**
+     * Drops the cached context, so the next call loads the key material again,
+     * for example, after a rotated certificate was mounted. Clients that were
+     * already built with the old context keep using it.
+     */
+    public synchronized void invalidate() {
+        _context = null;
+    }
+
+    /**
+     * Gets a new instance of a {@see KeyStore} in PKCS#12 Format with the X.509
+     * certificates of a stream as trusted entries.
+     * @param certificates One or more certificates in DER or PEM format.
+     * @return A new KeyStore instance with the certificates.
+     * @throws KeyStoreException
+     * @throws IOException
+     * @throws NoSuchAlgorithmException
+     * @throws CertificateException
+     */
+    protected static KeyStore createTrustStore(InputStream certificates)
+            throws KeyStoreException, IOException, NoSuchAlgorithmException,
+                CertificateException {
+
+        var ks = KeyStore.getInstance("PKCS12");
+        int index = 0;
+
+        ks.load(null, null);
+
+        for (var certificate : CertificateFactory.getInstance("X.509").generateCertificates(certificates)) {
+            ks.setCertificateEntry(index == 0 ? "ca-certificate" : "ca-certificate-" + index, certificate);
+            index++;
+        }
+
+        if (index == 0) {
+            throw new CertificateException("No root certificate was found.");
+        }
+
+        return ks;
+    }
+
+    /**
+     * Gets a new instance of a {@see KeyStore} in PKCS#12 Format with the X.509
+     * certificates of a byte array as trusted entries.
+     * @param certificates One or more certificates in DER or PEM format.
+     * @return A new KeyStore instance with the certificates.
+     * @throws KeyStoreException
+     * @throws IOException
+     * @throws NoSuchAlgorithmException
+     * @throws CertificateException
+     */
+    protected static KeyStore createTrustStore(byte[] certificates)
+            throws KeyStoreException, IOException, NoSuchAlgorithmException,
+                CertificateException {
+
+        return createTrustStore(new ByteArrayInputStream(certificates));
+    }
+
+    private static <T> CompletableFuture<T> loadAsync(Loader<T> loader) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return loader.load();
+            } catch (Exception ex) {
+                throw new CompletionException(ex);
+            }
+        }, LOADER);
+    }
+
+    /**
+     * A step of loading the context that can throw the checked exceptions of
+     * the key store and TLS APIs.
+     */
+    private interface Loader<T> {
+
+        T load() throws Exception;
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Shared;
+
+import Shared.Interfaces.AuthCertificate;
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpClient.Redirect;
+import java.net.http.HttpClient.Version;
+import java.security.KeyManagementException;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.UnrecoverableKeyException;
+import java.security.cert.CertificateException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import javax.net.ssl.SSLContext;
+
+/**
+ * HttpClientPool.java (UTF-8)
+ * Shares one {@see HttpClient} per certificate and hostname allowlist between
+ * every client of the Qlik Sense services, so their requests share connections
+ * and TLS sessions. The clients prefer HTTP/2, which ALPN negotiates with servers
+ * that support it so concurrent requests are multiplexed over one connection per
+ * server. Other servers are spoken to with HTTP/1.1 over connections kept alive
+ * in the pool of the client. Allowlisted hostnames are checked by the trust
+ * manager of the client's context during the handshake, so the hostname check
+ * of other clients in the JVM is left alone. A client is dropped once its
+ * certificate is no longer used.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public final class HttpClientPool {
+
+    private static final Map<AuthCertificate, Map<AllowlistHostnameVerifier, HttpClient>> CLIENTS =
+            new WeakHashMap<>();
+
+    private HttpClientPool() {
+    }
+
+    /**
+     * Gets the shared HTTP client of a certificate and allowlist, which is built
+     * on first use. Verifiers with the same allowlist share a client.
+     * @param qlikCert Qlik certificate used for authentication.
+     * @param hostnameVerifier Allowlist of hostnames that are not in the server's certificate.
+     * @return The HTTP client of the certificate.
+     * @throws KeyStoreException
+     * @throws IOException
+     * @throws CertificateException
+     * @throws NoSuchAlgorithmException
+     * @throws UnrecoverableKeyException
+     * @throws KeyManagementException
+     * @throws IllegalArgumentException If the verifier has an allowlist and the
+     * certificate is not a {@see CachedAuthCertificate}.
+     */
+    public static synchronized HttpClient get(AuthCertificate qlikCert,
+            AllowlistHostnameVerifier hostnameVerifier)
+            throws KeyStoreException, IOException, CertificateException,
+                NoSuchAlgorithmException, UnrecoverableKeyException, KeyManagementException {
+
+        var clients = CLIENTS.computeIfAbsent(qlikCert, cert -> new HashMap<>());
+        var client = clients.get(hostnameVerifier);
+
+        if (client == null) {
+            client = HttpClient.newBuilder()
+                .version(Version.HTTP_2)
+                .connectTimeout(Duration.ofSeconds(30))
+                .followRedirects(Redirect.NORMAL)
+                .sslContext(getSSLContext(qlikCert, hostnameVerifier))
+                .build();
+
+            clients.put(hostnameVerifier, client);
+        }
+
+        return client;
+    }
+
+    private static SSLContext getSSLContext(AuthCertificate qlikCert, AllowlistHostnameVerifier hostnameVerifier)
+            throws KeyStoreException, IOException, CertificateException,
+                NoSuchAlgorithmException, UnrecoverableKeyException, KeyManagementException {
+
+        if (hostnameVerifier.isStrict()) {
+            return qlikCert.getSSLContext();
+        } else if (qlikCert instanceof CachedAuthCertificate) {
+            return ((CachedAuthCertificate) qlikCert).getSSLContext(hostnameVerifier);
+        }
+
+        throw new IllegalArgumentException("A hostname allowlist needs a certificate based on CachedAuthCertificate.");
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Shared;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.util.Base64;
+
+/**
+ * InMemoryAuthCertificate.java (UTF-8)
+ * A certificate whose PKCS#12 client certificate and X.509 root certificate are
+ * given as bytes, for example, from a secret store or environment variables, so
+ * workers can run with a read-only file system. The bytes are copied, so the
+ * caller can clear its own arrays once this instance is built.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public class InMemoryAuthCertificate extends CachedAuthCertificate {
+
+    private final byte[] _clientCert;
+    private final char[] _clientCertPassword;
+    private final byte[] _rootCert;
+
+    /**
+     * Constructions a new {@see InMemoryAuthCertificate} instance for certificate authentication.
+     * @param clientCert Content of a PKCS#12 client certificate.
+     * @param clientCertPassword Password for the PKCS#12 certificate.
+     * @param rootCert Content of the X.509 root certificate in DER or PEM format.
+     */
+    public InMemoryAuthCertificate(byte[] clientCert, char[] clientCertPassword, byte[] rootCert) {
+        _clientCert = clientCert.clone();
+        _clientCertPassword = clientCertPassword == null ? null : clientCertPassword.clone();
+        _rootCert = rootCert.clone();
+    }
+
+    /**
+     * Creates an instance from environment variables, where the client certificate
+     * is encoded in Base64, and the root certificate is in PEM format or encoded
+     * in Base64 as well.
+     * @param clientCertVariable Variable with the PKCS#12 client certificate in Base64.
+     * @param passwordVariable Variable with the password of the client certificate.
+     * @param rootCertVariable Variable with the X.509 root certificate.
+     * @return A new instance with the content of the variables.
+     * @throws IllegalArgumentException If a variable is not set or is not valid Base64.
+     */
+    public static InMemoryAuthCertificate fromEnvironment(String clientCertVariable,
+            String passwordVariable, String rootCertVariable) {
+
+        var rootCert = requireVariable(rootCertVariable).strip();
+
+        return new InMemoryAuthCertificate(
+                Base64.getMimeDecoder().decode(requireVariable(clientCertVariable)),
+                requireVariable(passwordVariable).toCharArray(),
+                rootCert.startsWith("-----BEGIN") ? rootCert.getBytes(StandardCharsets.US_ASCII)
+                        : Base64.getMimeDecoder().decode(rootCert));
+    }
+
+    @Override
+    protected KeyStore loadKeyStore() throws Exception {
+        var ks = KeyStore.getInstance("PKCS12");
+        ks.load(new ByteArrayInputStream(_clientCert), _clientCertPassword);
+        return ks;
+    }
+
+    @Override
+    protected char[] getKeyPassword() {
+        return _clientCertPassword;
+    }
+
+    @Override
+    protected KeyStore loadTrustStore() throws Exception {
+        return createTrustStore(_rootCert);
+    }
+
+    static String requireVariable(String name) {
+        var value = System.getenv(name);
+
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("Environment variable " + name + " is not set.");
+        }
+
+        return value;
+    }
+}
@@ -24,13 +24,15 @@ import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import javax.net.ssl.SSLContext;
 
 /**
  * AuthCertificate.java (UTF-8)
  * Defines the contract for certification authentication to build against an interface.
  * 
- * @version 1.0
+ * @version 1.1
  * @author Steven Jenkins De Haro
  */
 public interface AuthCertificate {
@@ -39,4 +41,20 @@ public interface AuthCertificate {
     
     public SSLContext getSSLContext() throws KeyStoreException, IOException, CertificateException, 
                 NoSuchAlgorithmException, UnrecoverableKeyException, KeyManagementException;
+    
+    /**
+     * Starts building the {@see SSLContext} in the background, so the first
+     * request or connection does not wait for the certificates to load.
+     * @return CompletableFuture with the context, or completed exceptionally 
+     * with the error that {@see #getSSLContext()} would throw.
+     */
+    public default CompletableFuture<SSLContext> prepare() {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return getSSLContext();
+            } catch (Exception ex) {
+                throw new CompletionException(ex);
+            }
+        });
+    }
 }
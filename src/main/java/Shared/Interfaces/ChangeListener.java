@@ -0,0 +1,36 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Shared.Interfaces;
+
+import java.util.List;
+
+/**
+ * ChangeListener.java (UTF-8)
+ * Defines the contract for the change notifications of the Engine to build against
+ * an interface. The Engine only notifies about a handle once after its layout was
+ * read, so GetLayout must be called again to keep being notified. The listener is
+ * called on the read thread of the connection, so it must not block.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public interface ChangeListener {
+
+    void handlesChanged(List<Integer> handles);
+}
@@ -0,0 +1,42 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Shared.Interfaces;
+
+import java.io.IOException;
+import org.json.JSONArray;
+
+/**
+ * DeltaSink.java (UTF-8)
+ * Defines the contract for the output of incremental data extracts to build
+ * against an interface. Rows are arrays with the text of each cell, and only rows 
+ * that were inserted, updated or deleted since the previous extract are passed.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public interface DeltaSink {
+
+    void rowInserted(String jobName, JSONArray row) throws IOException;
+
+    void rowUpdated(String jobName, JSONArray oldRow, JSONArray newRow) throws IOException;
+
+    void rowDeleted(String jobName, JSONArray row) throws IOException;
+
+    void completed(String jobName) throws IOException;
+}
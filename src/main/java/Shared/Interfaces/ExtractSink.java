@@ -0,0 +1,47 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Shared.Interfaces;
+
+import java.io.IOException;
+import org.json.JSONArray;
+
+/**
+ * ExtractSink.java (UTF-8)
+ * Defines the contract for the output of data extracts to build against an interface.
+ * Pages can be fetched by several sessions at once, so they may arrive out of order
+ * and from different threads. A resumed extract can deliver a page again.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public interface ExtractSink {
+
+    /**
+     * Called before the pages of a run are requested.
+     * @param jobName Name of the job.
+     * @param firstRow Row the run starts from, which is 0 unless it resumes from a checkpoint.
+     * @throws IOException
+     */
+    default void started(String jobName, int firstRow) throws IOException {
+    }
+
+    void pageReceived(String jobName, int top, JSONArray qMatrix) throws IOException;
+
+    void completed(String jobName) throws IOException;
+}
@@ -0,0 +1,36 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Shared.Interfaces;
+
+import java.nio.ByteBuffer;
+
+/**
+ * FragmentListener.java (UTF-8)
+ * Defines the contract for streaming the fragments of large messages to build
+ * against an interface. Fragments arrive in order, and a fragment may end in the 
+ * middle of a multi-byte UTF-8 character. The buffer is only valid for the 
+ * duration of the call.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public interface FragmentListener {
+
+    void fragmentReceived(ByteBuffer utf8Fragment, boolean isFirst, boolean isLast);
+}
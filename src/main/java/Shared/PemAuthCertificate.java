@@ -0,0 +1,179 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Shared;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyFactory;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.Base64;
+import java.util.regex.Pattern;
+
+/**
+ * PemAuthCertificate.java (UTF-8)
+ * A certificate built from the PEM files that Qlik Sense exports, which are
+ * client.pem, client_key.pem and root.pem, given as text, for example, from
+ * environment variables or a mounted secret. The private key can be in PKCS#8
+ * (BEGIN PRIVATE KEY) or PKCS#1 (BEGIN RSA PRIVATE KEY) format, and must not be
+ * encrypted. The key store is only built in memory.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public class PemAuthCertificate extends CachedAuthCertificate {
+
+    private static final Pattern PEM_BLOCK = Pattern.compile(
+            "-----BEGIN ([A-Z0-9 ]+)-----([A-Za-z0-9+/=\\s]+)-----END \\1-----");
+    private static final byte[] RSA_ALGORITHM = {
+        0x30, 0x0D, 0x06, 0x09, 0x2A, (byte) 0x86, 0x48, (byte) 0x86, (byte) 0xF7, 0x0D, 0x01, 0x01, 0x01, 0x05, 0x00
+    };
+    private final String _clientCert;
+    private final String _clientKey;
+    private final String _rootCert;
+    private final char[] _keyPassword; // Only protects the key inside the in-memory key store.
+
+    /**
+     * Constructions a new {@see PemAuthCertificate} instance for certificate authentication.
+     * @param clientCert Client certificate in PEM format, followed by its chain if needed.
+     * @param clientKey Unencrypted private key of the client certificate in PEM format.
+     * @param rootCert Root certificate of the client certificate in PEM format.
+     */
+    public PemAuthCertificate(String clientCert, String clientKey, String rootCert) {
+        _clientCert = clientCert;
+        _clientKey = clientKey;
+        _rootCert = rootCert;
+
+        var password = new byte[12];
+        new SecureRandom().nextBytes(password);
+        _keyPassword = Base64.getEncoder().encodeToString(password).toCharArray();
+    }
+
+    /**
+     * Creates an instance from environment variables that hold the PEM text.
+     * @param clientCertVariable Variable with the client certificate.
+     * @param clientKeyVariable Variable with the private key of the client certificate.
+     * @param rootCertVariable Variable with the root certificate.
+     * @return A new instance with the content of the variables.
+     * @throws IllegalArgumentException If a variable is not set.
+     */
+    public static PemAuthCertificate fromEnvironment(String clientCertVariable,
+            String clientKeyVariable, String rootCertVariable) {
+
+        return new PemAuthCertificate(InMemoryAuthCertificate.requireVariable(clientCertVariable),
+                InMemoryAuthCertificate.requireVariable(clientKeyVariable),
+                InMemoryAuthCertificate.requireVariable(rootCertVariable));
+    }
+
+    @Override
+    protected KeyStore loadKeyStore() throws Exception {
+        var chain = CertificateFactory.getInstance("X.509")
+                .generateCertificates(new ByteArrayInputStream(_clientCert.getBytes(StandardCharsets.US_ASCII)))
+                .toArray(new Certificate[0]);
+
+        if (chain.length == 0) {
+            throw new InvalidKeySpecException("No client certificate was found.");
+        }
+
+        var ks = KeyStore.getInstance("PKCS12");
+        ks.load(null, null);
+        ks.setKeyEntry("client", readPrivateKey(_clientKey, chain[0].getPublicKey().getAlgorithm()),
+                _keyPassword, chain);
+        return ks;
+    }
+
+    @Override
+    protected char[] getKeyPassword() {
+        return _keyPassword;
+    }
+
+    @Override
+    protected KeyStore loadTrustStore() throws Exception {
+        return createTrustStore(_rootCert.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Reads an unencrypted private key in PEM format.
+     * @param pem Text with the key.
+     * @param algorithm Algorithm of the key, which is the one of its certificate.
+     * @return The private key.
+     * @throws Exception If the key is missing, encrypted or not valid.
+     */
+    private static PrivateKey readPrivateKey(String pem, String algorithm) throws Exception {
+        var matcher = PEM_BLOCK.matcher(pem);
+
+        while (matcher.find()) {
+            var der = Base64.getMimeDecoder().decode(matcher.group(2));
+
+            switch (matcher.group(1)) {
+                case "PRIVATE KEY":
+                    return KeyFactory.getInstance(algorithm).generatePrivate(new PKCS8EncodedKeySpec(der));
+                case "RSA PRIVATE KEY":
+                    return KeyFactory.getInstance("RSA").generatePrivate(new PKCS8EncodedKeySpec(wrapRsaKey(der)));
+                case "ENCRYPTED PRIVATE KEY":
+                    throw new InvalidKeySpecException("Encrypted private keys are not supported.");
+                default:
+                    break; // Skips other blocks, for example, EC PARAMETERS.
+            }
+        }
+
+        throw new InvalidKeySpecException("No private key was found.");
+    }
+
+    /**
+     * Wraps a PKCS#1 RSA key in the PKCS#8 structure that {@see KeyFactory} reads,
+     * which adds the version and the rsaEncryption algorithm identifier.
+     */
+    private static byte[] wrapRsaKey(byte[] pkcs1) {
+        var body = new ByteArrayOutputStream();
+        body.write(0x02); // INTEGER 0, the version.
+        body.write(0x01);
+        body.write(0x00);
+        body.writeBytes(RSA_ALGORITHM);
+        body.write(0x04); // OCTET STRING with the PKCS#1 key.
+        writeLength(body, pkcs1.length);
+        body.writeBytes(pkcs1);
+
+        var pkcs8 = new ByteArrayOutputStream();
+        pkcs8.write(0x30); // SEQUENCE
+        writeLength(pkcs8, body.size());
+        pkcs8.writeBytes(body.toByteArray());
+        return pkcs8.toByteArray();
+    }
+
+    private static void writeLength(ByteArrayOutputStream out, int length) {
+        if (length < 0x80) {
+            out.write(length);
+            return;
+        }
+
+        int bytes = length > 0xFFFF ? 3 : length > 0xFF ? 2 : 1;
+        out.write(0x80 | bytes);
+
+        for (int i = bytes - 1; i >= 0; i--) {
+            out.write(length >>> (i * 8));
+        }
+    }
+}
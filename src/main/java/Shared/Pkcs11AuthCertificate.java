@@ -0,0 +1,93 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package Shared;
+
+import java.security.KeyStore;
+import java.security.NoSuchProviderException;
+import java.security.Provider;
+import java.security.Security;
+
+/**
+ * Pkcs11AuthCertificate.java (UTF-8)
+ * A certificate whose private key stays in a PKCS#11 token, for example, a
+ * hardware security module or SoftHSM, and is used through the SunPKCS11
+ * provider of the JDK. The token is opened once when the context is built,
+ * and the root certificate is given as bytes, so nothing is read from disk
+ * except the native library of the token.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public class Pkcs11AuthCertificate extends CachedAuthCertificate {
+
+    private final String _providerConfig;
+    private final char[] _pin;
+    private final byte[] _rootCert;
+    private Provider _provider;
+
+    /**
+     * Constructions a new {@see Pkcs11AuthCertificate} instance for certificate authentication.
+     * @param providerConfig Path to a SunPKCS11 configuration file, or the configuration
+     * itself starting with "--", for example, "--name=qlik\nlibrary=/usr/lib/softhsm/libsofthsm2.so".
+     * @param pin PIN of the token.
+     * @param rootCert Content of the X.509 root certificate in DER or PEM format.
+     */
+    public Pkcs11AuthCertificate(String providerConfig, char[] pin, byte[] rootCert) {
+        _providerConfig = providerConfig;
+        _pin = pin == null ? null : pin.clone();
+        _rootCert = rootCert.clone();
+    }
+
+    @Override
+    protected KeyStore loadKeyStore() throws Exception {
+        var ks = KeyStore.getInstance("PKCS11", getProvider());
+        ks.load(null, _pin);
+        return ks;
+    }
+
+    @Override
+    protected char[] getKeyPassword() {
+        return _pin;
+    }
+
+    @Override
+    protected KeyStore loadTrustStore() throws Exception {
+        return createTrustStore(_rootCert);
+    }
+
+    /**
+     * Gets the provider of the token, which is configured on first use and then
+     * reused, since every configured provider loads the native library again.
+     * @return The configured SunPKCS11 provider.
+     * @throws NoSuchProviderException If the JDK has no SunPKCS11 provider.
+     */
+    private synchronized Provider getProvider() throws NoSuchProviderException {
+        if (_provider == null) {
+            var provider = Security.getProvider("SunPKCS11");
+
+            if (provider == null) {
+                throw new NoSuchProviderException("The SunPKCS11 provider is not available.");
+            }
+
+            _provider = provider.configure(_providerConfig);
+        }
+
+        return _provider;
+    }
+}
@@ -21,29 +21,24 @@ package Shared;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.security.KeyManagementException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
-import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
-import javax.net.ssl.KeyManagerFactory;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.TrustManagerFactory;
-import Shared.Interfaces.AuthCertificate;
 
 /**
  * QlikAuthCertificate.java (UTF-8)
  * A class that makes use of standard certificates exported from Qlik Sense without needing
- * to convert them to Java KeyStore (*.jks) certificates.
+ * to convert them to Java KeyStore (*.jks) certificates. The files are only read
+ * when the context is built, which {@see CachedAuthCertificate} does once and 
+ * then reuses.
  * 
- * @version 1.0
+ * @version 1.2
  * @author Steven Jenkins De Haro
  */
-public class QlikAuthCertificate implements AuthCertificate {
+public class QlikAuthCertificate extends CachedAuthCertificate {
     
     private final String _clientCertPath; // Client certificate with private key. 
     private final char[] _clientCertPassword;
@@ -63,35 +58,19 @@ public class QlikAuthCertificate implements AuthCertificate {
         _rootCertPath = rootCertPath;
     }
     
-    /**
-     * Configures the needed certificates to validate the identity of the HTTPS 
-     * server against a list of trusted certificates and to authenticate to the 
-     * HTTPS server using a private key. 
-     * @return An initialized secure socket context for TLS/SSL connections.
-     * @throws KeyStoreException
-     * @throws IOException
-     * @throws CertificateException
-     * @throws NoSuchAlgorithmException
-     * @throws UnrecoverableKeyException
-     * @throws KeyManagementException 
-     */
     @Override
-    public SSLContext getSSLContext() 
-            throws KeyStoreException, IOException, CertificateException, 
-                NoSuchAlgorithmException, UnrecoverableKeyException, 
-                KeyManagementException {
-        
-        var kmf = KeyManagerFactory.getInstance("SunX509");
-        var tmf = TrustManagerFactory.getInstance("SunX509");
-        var keyStore = getKeyStore(_clientCertPath, _clientCertPassword, false);
-        var trustStore = getKeyStore(_rootCertPath, null, true); 
-        var context = SSLContext.getInstance(PROTOCOL);
-        
-        kmf.init(keyStore, _clientCertPassword);
-        tmf.init(trustStore);
-        context.init(kmf.getKeyManagers(), tmf.getTrustManagers(), new SecureRandom());
-
-        return context;
+    protected KeyStore loadKeyStore() throws Exception {
+        return getKeyStore(_clientCertPath, _clientCertPassword, false);
+    }
+    
+    @Override
+    protected char[] getKeyPassword() {
+        return _clientCertPassword;
+    }
+    
+    @Override
+    protected KeyStore loadTrustStore() throws Exception {
+        return getKeyStore(_rootCertPath, null, true);
     }
     
     /**
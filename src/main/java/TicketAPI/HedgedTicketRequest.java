@@ -0,0 +1,270 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package TicketAPI;
+
+import Shared.Interfaces.AuthCertificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.json.JSONObject;
+
+/**
+ * HedgedTicketRequest.java (UTF-8)
+ * Requests tickets from several proxy nodes or virtual proxies, where each request
+ * goes to the next node in turn, and a second request is sent to another node
+ * if the first has not answered within a percentile of the recent latencies.
+ * The first ticket to arrive is returned and the other request is cancelled,
+ * so a slow node only adds the hedge delay to a login instead of its full latency.
+ * A request that fails before the delay is sent to another node right away.
+ * Note: A ticket from a cancelled request may still be issued by its proxy,
+ * where it expires unused after one minute.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public class HedgedTicketRequest {
+
+    private static final int LATENCY_SAMPLES = 256;
+    private static final int MIN_LATENCY_SAMPLES = 20;
+    private final List<TicketRequest> _nodes;
+    private final double _percentile;
+    private final long _initialDelayNanos;
+    private final long[] _latencies = new long[LATENCY_SAMPLES]; // Ring buffer of recent latencies.
+    private int _latencyCount;
+    private int _nextLatency;
+    private final AtomicInteger _nextNode = new AtomicInteger();
+    private final LongAdder _requests = new LongAdder();
+    private final LongAdder _hedges = new LongAdder();
+    private final LongAdder _failovers = new LongAdder();
+    private final LongAdder _primaryWins = new LongAdder();
+    private final LongAdder _hedgeWins = new LongAdder();
+    private final LongAdder _failures = new LongAdder();
+
+    /**
+     * Constructions a new {@see HedgedTicketRequest} instance for the proxy nodes
+     * of a virtual proxy that hedges after the 95th percentile of the latencies.
+     * @param hostnames Hostnames of the Qlik Sense servers used for requests.
+     * @param virtualProxyPrefix Optional prefix of virtual proxy if one is used.
+     * @param qlikCert Qlik certificate used for authentication.
+     */
+    public HedgedTicketRequest(List<String> hostnames, Optional<String> virtualProxyPrefix,
+            AuthCertificate qlikCert) {
+
+        this(toNodes(hostnames, virtualProxyPrefix, qlikCert), 0.95, Duration.ofMillis(500));
+    }
+
+    /**
+     * Constructions a new {@see HedgedTicketRequest} instance.
+     * @param nodes Ticket requests for each node or virtual proxy, which can share a rate limiter.
+     * @param percentile Percentile of the recent latencies after which a request
+     * is hedged, for example, 0.95.
+     * @param initialDelay Delay after which a request is hedged until enough
+     * latencies are known.
+     * @throws IllegalArgumentException If there are no nodes or the percentile
+     * is not between 0 and 1.
+     */
+    public HedgedTicketRequest(List<TicketRequest> nodes, double percentile, Duration initialDelay) {
+        if (nodes.isEmpty() || percentile <= 0 || percentile > 1) {
+            throw new IllegalArgumentException("Needs at least one node and a percentile between 0 and 1.");
+        }
+
+        _nodes = List.copyOf(nodes);
+        _percentile = percentile;
+        _initialDelayNanos = initialDelay.toNanos();
+    }
+
+    private static List<TicketRequest> toNodes(List<String> hostnames, Optional<String> virtualProxyPrefix,
+            AuthCertificate qlikCert) {
+
+        var nodes = new ArrayList<TicketRequest>();
+
+        for (var hostname : hostnames) {
+            nodes.add(new TicketRequest(hostname, virtualProxyPrefix, qlikCert));
+        }
+
+        return nodes;
+    }
+
+    /**
+     * Requests a ticket asynchronously from the node whose turn it is, and from
+     * a second node if the first one is slow or fails.
+     * @param userDirectory Directory associated with user.
+     * @param userId Login name of user.
+     * @return CompletableFuture with Ticket to claim within one minute, or completed
+     * exceptionally with the error of the last node if every request failed.
+     */
+    public CompletableFuture<String> getTicketAsync(String userDirectory, String userId) {
+        var hedge = new Hedge(userDirectory, userId, Math.floorMod(_nextNode.getAndIncrement(), _nodes.size()));
+
+        _requests.increment();
+        hedge.start();
+        return hedge.result;
+    }
+
+    /**
+     * Gets the delay after which a request is hedged, which is the configured
+     * percentile of the recent latencies.
+     * @return Hedge delay.
+     */
+    public synchronized Duration getHedgeDelay() {
+        if (_latencyCount < MIN_LATENCY_SAMPLES) {
+            return Duration.ofNanos(_initialDelayNanos);
+        }
+
+        var sorted = Arrays.copyOf(_latencies, _latencyCount);
+
+        Arrays.sort(sorted);
+        return Duration.ofNanos(sorted[(int) Math.ceil(_percentile * sorted.length) - 1]);
+    }
+
+    private synchronized void recordLatency(long nanos) {
+        _latencies[_nextLatency] = nanos;
+        _nextLatency = (_nextLatency + 1) % LATENCY_SAMPLES;
+        _latencyCount = Math.min(_latencyCount + 1, LATENCY_SAMPLES);
+    }
+
+    /**
+     * Gets the number of requests, hedges sent after the delay, failovers sent
+     * after an error, wins of the first and second request, and failures.
+     * @return Metrics of the requests as JSON.
+     */
+    public JSONObject getMetrics() {
+        return new JSONObject()
+                .put("requests", _requests.sum())
+                .put("hedges", _hedges.sum())
+                .put("failovers", _failovers.sum())
+                .put("primaryWins", _primaryWins.sum())
+                .put("hedgeWins", _hedgeWins.sum())
+                .put("failures", _failures.sum())
+                .put("hedgeDelayMillis", getHedgeDelay().toMillis());
+    }
+
+    /**
+     * The requests for one ticket, which are the primary and at most one hedge.
+     */
+    private class Hedge {
+
+        private final String userDirectory;
+        private final String userId;
+        private final int primaryNode;
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+        private final List<CompletableFuture<String>> attempts = new ArrayList<>(2);
+        private final AtomicBoolean isHedged = new AtomicBoolean();
+        private final AtomicBoolean isPrimaryDone = new AtomicBoolean();
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final long startTime = System.nanoTime();
+
+        Hedge(String userDirectory, String userId, int primaryNode) {
+            this.userDirectory = userDirectory;
+            this.userId = userId;
+            this.primaryNode = primaryNode;
+        }
+
+        void start() {
+            result.whenComplete((ticket, ex) -> {
+                if (result.isCancelled()) {
+                    cancelAttempts(); // Cancelled by the caller.
+                }
+            });
+
+            send(primaryNode, false);
+
+            if (_nodes.size() > 1) {
+                CompletableFuture.delayedExecutor(getHedgeDelay().toNanos(), TimeUnit.NANOSECONDS)
+                        .execute(() -> {
+                            if (!result.isDone() && isHedged.compareAndSet(false, true)) {
+                                _hedges.increment();
+                                send((primaryNode + 1) % _nodes.size(), true);
+                            }
+                        });
+            }
+        }
+
+        private void send(int node, boolean isHedge) {
+            CompletableFuture<String> attempt;
+
+            outstanding.incrementAndGet();
+
+            try {
+                attempt = _nodes.get(node).getTicketAsync(userDirectory, userId);
+            } catch (Exception ex) {
+                attempt = CompletableFuture.failedFuture(ex);
+            }
+
+            synchronized (attempts) {
+                attempts.add(attempt);
+            }
+
+            if (result.isCancelled()) {
+                attempt.cancel(true);
+            }
+
+            attempt.whenComplete((ticket, ex) -> completed(ticket, ex, isHedge));
+        }
+
+        /**
+         * Handles the end of an attempt. Only the primary is sampled for the hedge
+         * delay, from the start of the request and whether it wins or not. When the
+         * hedge wins first, the primary is sampled with the time so far, which it
+         * took at least, so slow nodes keep pushing the delay up.
+         */
+        private void completed(String ticket, Throwable ex, boolean isHedge) {
+            if (!isHedge && isPrimaryDone.compareAndSet(false, true) && ex == null) {
+                recordLatency(System.nanoTime() - startTime);
+            }
+
+            if (ex == null) {
+                if (result.complete(ticket)) {
+                    if (isHedge && isPrimaryDone.compareAndSet(false, true)) {
+                        recordLatency(System.nanoTime() - startTime);
+                    }
+
+                    (isHedge ? _hedgeWins : _primaryWins).increment();
+                    cancelAttempts();
+                }
+
+                return;
+            }
+
+            if (!result.isDone() && _nodes.size() > 1 && isHedged.compareAndSet(false, true)) {
+                _failovers.increment();
+                send((primaryNode + 1) % _nodes.size(), true);
+            }
+
+            if (outstanding.decrementAndGet() == 0 && result.completeExceptionally(ex)) {
+                _failures.increment();
+            }
+        }
+
+        private void cancelAttempts() {
+            synchronized (attempts) {
+                for (var attempt : attempts) {
+                    attempt.cancel(true); // Ignored by the one that already completed.
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package TicketAPI;
+
+import java.io.IOException;
+
+/**
+ * RateLimitExceededException.java (UTF-8)
+ * Thrown when a ticket request is rejected by a {@see TicketRateLimiter}, either
+ * right away because the proxy is overloaded or after waiting too long for its turn.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public class RateLimitExceededException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+    private final String _target;
+    private final String _userDirectory;
+
+    /**
+     * Constructions a new {@see RateLimitExceededException} instance.
+     * @param target Proxy the request was for, as its hostname and virtual proxy prefix.
+     * @param userDirectory Directory of the user the ticket was for.
+     * @param message Reason the request was rejected.
+     */
+    public RateLimitExceededException(String target, String userDirectory, String message) {
+        super(String.format("Ticket request for %1$s on %2$s rejected: %3$s",
+                userDirectory, target, message));
+
+        _target = target;
+        _userDirectory = userDirectory;
+    }
+
+    public String getTarget() {
+        return _target;
+    }
+
+    public String getUserDirectory() {
+        return _userDirectory;
+    }
+}
@@ -0,0 +1,345 @@
+/**
+ * This file is part of Qlik Sense Java Examples <https://github.com/StevenJDH/Qlik-Sense-Java-Examples>.
+ * Copyright (C) 2023 Steven Jenkins De Haro.
+ *
+ * Qlik Sense Java Examples is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Qlik Sense Java Examples is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Qlik Sense Java Examples.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package TicketAPI;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TicketRateLimiter.java (UTF-8)
+ * Limits the rate of ticket requests sent to each proxy, which is a hostname and
+ * virtual proxy prefix, with a token bucket. Requests that find the bucket empty
+ * wait in a queue that is shared fairly between user directories by weight, so
+ * a login spike from one directory does not hold back the others. A request
+ * fails fast when the queue is full or its expected wait is over the maximum,
+ * and fails after the maximum wait if it has not had its turn by then.
+ *
+ * @version 1.0
+ * @author Steven Jenkins De Haro
+ */
+public class TicketRateLimiter implements AutoCloseable {
+
+    private final double _ticketsPerSecond;
+    private final int _burst;
+    private final long _maxWaitNanos;
+    private final int _maxQueued;
+    private final Map<String, Integer> _weights = new ConcurrentHashMap<>();
+    private final Map<String, Bucket> _buckets = new ConcurrentHashMap<>();
+    private final AtomicLong _nextSequence = new AtomicLong();
+    private final ScheduledExecutorService _timer;
+
+    /**
+     * Constructions a new {@see TicketRateLimiter} instance.
+     * @param ticketsPerSecond Rate of requests each proxy gets on average.
+     * @param burst Number of requests that can be sent at once after a quiet period.
+     * @param maxWait Longest time a request waits for its turn.
+     * @param maxQueued Number of requests that can wait per proxy before new ones fail fast.
+     * @throws IllegalArgumentException If the rate or burst is not positive.
+     */
+    public TicketRateLimiter(double ticketsPerSecond, int burst, Duration maxWait, int maxQueued) {
+        if (ticketsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Rate and burst must be positive.");
+        }
+
+        _ticketsPerSecond = ticketsPerSecond;
+        _burst = burst;
+        _maxWaitNanos = maxWait.toNanos();
+        _maxQueued = Math.max(0, maxQueued);
+        _timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "ticket-rate-limiter");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Sets the share of a user directory when requests are queued, where a
+     * directory with weight 2 gets twice the turns of one with weight 1.
+     * @param userDirectory Directory to set the weight of.
+     * @param weight Weight of the directory, which is 1 by default.
+     */
+    public void setWeight(String userDirectory, int weight) {
+        _weights.put(normalize(userDirectory), Math.max(1, weight));
+    }
+
+    /**
+     * Waits for the turn of a request.
+     * @param target Proxy the request is for, as its hostname and virtual proxy prefix.
+     * @param userDirectory Directory of the user the ticket is for.
+     * @return CompletableFuture that completes when the request can be sent, or
+     * completes exceptionally with a {@see RateLimitExceededException} if it was rejected.
+     */
+    public CompletableFuture<Void> acquire(String target, String userDirectory) {
+        return _buckets.computeIfAbsent(target, Bucket::new).acquire(normalize(userDirectory));
+    }
+
+    /**
+     * Waits for the turn of a request on the calling thread.
+     * @param target Proxy the request is for, as its hostname and virtual proxy prefix.
+     * @param userDirectory Directory of the user the ticket is for.
+     * @throws RateLimitExceededException If the request was rejected.
+     * @throws InterruptedIOException If the thread was interrupted while waiting.
+     */
+    void await(String target, String userDirectory) throws IOException {
+        var turn = acquire(target, userDirectory);
+
+        try {
+            turn.get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RateLimitExceededException) {
+                throw (RateLimitExceededException) ex.getCause();
+            }
+
+            throw new IOException(ex.getCause());
+        } catch (InterruptedException ex) {
+            turn.cancel(false); // Gives the place in the queue to the next request.
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to request a ticket.");
+        }
+    }
+
+    /**
+     * Gets the number of requests waiting for their turn on a proxy.
+     * @param target Proxy as its hostname and virtual proxy prefix.
+     * @return Number of waiting requests.
+     */
+    public int getQueueLength(String target) {
+        var bucket = _buckets.get(target);
+
+        if (bucket == null) {
+            return 0;
+        }
+
+        synchronized (bucket) {
+            return bucket.queue.size();
+        }
+    }
+
+    /**
+     * Stops the limiter and rejects the requests that are still waiting.
+     */
+    @Override
+    public void close() {
+        _timer.shutdownNow();
+
+        for (var bucket : _buckets.values()) {
+            List<Waiter> waiters;
+
+            synchronized (bucket) {
+                waiters = new ArrayList<>(bucket.queue);
+            }
+
+            for (var waiter : waiters) {
+                waiter.turn.completeExceptionally(new RateLimitExceededException(bucket.target,
+                        waiter.userDirectory, "the rate limiter was closed"));
+            }
+        }
+    }
+
+    private static String normalize(String userDirectory) {
+        return userDirectory == null ? "" : userDirectory.toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * The tokens and queue of one proxy. Queued requests are ordered by weighted
+     * fair queuing, where each directory's requests get finish tags spaced by the
+     * inverse of its weight, and the request with the lowest tag goes next.
+     */
+    private class Bucket {
+
+        private final String target;
+        private final PriorityQueue<Waiter> queue = new PriorityQueue<>();
+        private final Map<String, Double> lastFinishTags = new HashMap<>();
+        private double virtualTime;
+        private double tokens = _burst;
+        private long lastRefillTime = System.nanoTime();
+        private boolean isDispatchScheduled;
+
+        Bucket(String target) {
+            this.target = target;
+        }
+
+        CompletableFuture<Void> acquire(String userDirectory) {
+            Waiter waiter;
+
+            synchronized (this) {
+                refill();
+
+                if (queue.isEmpty() && tokens >= 1) {
+                    tokens--;
+                    return CompletableFuture.completedFuture(null);
+                }
+
+                double expectedWaitNanos = (queue.size() + 1 - tokens) / _ticketsPerSecond * 1e9;
+
+                if (queue.size() >= _maxQueued || expectedWaitNanos > _maxWaitNanos) {
+                    return CompletableFuture.failedFuture(new RateLimitExceededException(target,
+                            userDirectory, String.format("proxy overloaded with %1$d requests waiting",
+                                    queue.size())));
+                }
+
+                double weight = _weights.getOrDefault(userDirectory, 1);
+                double finishTag = Math.max(virtualTime, lastFinishTags.getOrDefault(userDirectory, 0.0))
+                        + 1 / weight;
+
+                var queued = new Waiter(userDirectory, finishTag, _nextSequence.getAndIncrement());
+
+                queued.timeout = _timer.schedule(() -> queued.turn.completeExceptionally(
+                        new RateLimitExceededException(target, userDirectory, "waited too long")),
+                        _maxWaitNanos, TimeUnit.NANOSECONDS);
+                lastFinishTags.put(userDirectory, finishTag);
+                queue.add(queued);
+                scheduleDispatch();
+                waiter = queued;
+            }
+
+            waiter.turn.whenComplete((value, ex) -> {
+                if (ex != null) {
+                    remove(waiter); // Timed out or cancelled.
+                }
+            });
+
+            return waiter.turn;
+        }
+
+        private synchronized void remove(Waiter waiter) {
+            queue.remove(waiter);
+
+            if (queue.isEmpty()) {
+                reset();
+            }
+        }
+
+        /**
+         * Gives the available tokens to the waiting requests with the lowest finish tags.
+         */
+        private void dispatch() {
+            var ready = new ArrayList<Waiter>();
+
+            synchronized (this) {
+                isDispatchScheduled = false;
+                refill();
+
+                while (tokens >= 1 && !queue.isEmpty()) {
+                    var waiter = queue.poll();
+
+                    if (waiter.turn.isDone()) {
+                        continue;
+                    }
+
+                    tokens--;
+                    virtualTime = waiter.finishTag;
+                    ready.add(waiter);
+                }
+
+                if (queue.isEmpty()) {
+                    reset();
+                } else {
+                    scheduleDispatch();
+                }
+            }
+
+            int refunds = 0;
+
+            // Completed outside of the lock since the callers continue on this thread.
+            for (var waiter : ready) {
+                waiter.timeout.cancel(false);
+
+                if (!waiter.turn.complete(null)) {
+                    refunds++; // Timed out or cancelled after it was taken from the queue.
+                }
+            }
+
+            if (refunds > 0) {
+                synchronized (this) {
+                    refill();
+                    tokens = Math.min(_burst, tokens + refunds);
+                }
+
+                dispatch();
+            }
+        }
+
+        private void scheduleDispatch() {
+            if (isDispatchScheduled || _timer.isShutdown()) {
+                return;
+            }
+
+            long delayNanos = (long) (Math.max(0, 1 - tokens) / _ticketsPerSecond * 1e9);
+
+            isDispatchScheduled = true;
+            _timer.schedule(this::dispatch, delayNanos, TimeUnit.NANOSECONDS);
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+
+            tokens = Math.min(_burst, tokens + (now - lastRefillTime) / 1e9 * _ticketsPerSecond);
+            lastRefillTime = now;
+        }
+
+        /**
+         * Forgets the finish tags once nobody is waiting, so directories that
+         * were busy before start even with the others again.
+         */
+        private void reset() {
+            lastFinishTags.clear();
+            virtualTime = 0;
+        }
+    }
+
+    /**
+     * A request waiting for its turn.
+     */
+    private static class Waiter implements Comparable<Waiter> {
+
+        private final String userDirectory;
+        private final double finishTag;
+        private final long sequence; // Keeps requests with the same tag in arrival order.
+        private final CompletableFuture<Void> turn = new CompletableFuture<>();
+        private ScheduledFuture<?> timeout; // Set before it is queued.
+
+        Waiter(String userDirectory, double finishTag, long sequence) {
+            this.userDirectory = userDirectory;
+            this.finishTag = finishTag;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Waiter other) {
+            int order = Double.compare(finishTag, other.finishTag);
+            return order != 0 ? order : Long.compare(sequence, other.sequence);
+        }
+    }
+}
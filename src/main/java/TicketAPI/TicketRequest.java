@@ -18,6 +18,8 @@
 
 package TicketAPI;
 
+import Shared.AllowlistHostnameVerifier;
+import Shared.HttpClientPool;
 import Shared.Interfaces.AuthCertificate;
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -27,7 +29,7 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
 import java.net.http.HttpClient;
-import java.net.http.HttpClient.Redirect;
+import java.net.http.HttpClient.Version;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.security.KeyManagementException;
@@ -36,11 +38,13 @@ import java.security.NoSuchAlgorithmException;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateException;
 import java.time.Duration;
+import java.util.Locale;
 import java.util.Optional;
-import java.util.Properties;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocketFactory;
 
 /**
  * TicketRequest.java (UTF-8)
@@ -48,7 +52,7 @@ import javax.net.ssl.SSLSession;
  * standard certificates exported from Qlik Sense without needing to convert them to
  * Java KeyStore (*.jks) certificates.
  * 
- * @version 1.2
+ * @version 1.6
  * @author Steven Jenkins De Haro
  */
 public class TicketRequest {
@@ -56,6 +60,12 @@ public class TicketRequest {
     private static final String XRFKEY = "1234567890123456"; // Xrfkey to prevent CSRF attacks.
     private final String _apiUrl;
     private final AuthCertificate _qlikCert;
+    private final AllowlistHostnameVerifier _hostnameVerifier;
+    private final TicketRateLimiter _rateLimiter;
+    private final String _target;
+    private HttpClient _httpClient;
+    private SSLSocketFactory _socketFactory;
+    private volatile Version _negotiatedVersion;
     
     /**
      * Constructions a new {@see TicketRequest} instance to make Ticket requests.
@@ -66,9 +76,43 @@ public class TicketRequest {
     public  TicketRequest(String hostname, Optional<String> virtualProxyPrefix, 
                 AuthCertificate qlikCert) {
         
+        this(hostname, virtualProxyPrefix, qlikCert, AllowlistHostnameVerifier.strict());
+    }
+    
+    /**
+     * Constructions a new {@see TicketRequest} instance to make Ticket requests
+     * that only skips the hostname check for the hosts in an allowlist.
+     * @param hostname Hostname of the Qlik Sense server used for requests.
+     * @param virtualProxyPrefix Optional prefix of virtual proxy if one is used.
+     * @param qlikCert Qlik certificate used for authentication.
+     * @param hostnameVerifier Allowlist of hostnames that are not in the server's certificate.
+     */
+    public  TicketRequest(String hostname, Optional<String> virtualProxyPrefix, 
+                AuthCertificate qlikCert, AllowlistHostnameVerifier hostnameVerifier) {
+        
+        this(hostname, virtualProxyPrefix, qlikCert, hostnameVerifier, null);
+    }
+    
+    /**
+     * Constructions a new {@see TicketRequest} instance to make Ticket requests
+     * that wait for their turn with a rate limiter, which can be shared with the
+     * instances for other proxies and keeps a separate bucket for each.
+     * @param hostname Hostname of the Qlik Sense server used for requests.
+     * @param virtualProxyPrefix Optional prefix of virtual proxy if one is used.
+     * @param qlikCert Qlik certificate used for authentication.
+     * @param hostnameVerifier Allowlist of hostnames that are not in the server's certificate.
+     * @param rateLimiter Rate limiter of the requests, or null to send them right away.
+     */
+    public  TicketRequest(String hostname, Optional<String> virtualProxyPrefix, 
+                AuthCertificate qlikCert, AllowlistHostnameVerifier hostnameVerifier, 
+                TicketRateLimiter rateLimiter) {
+        
         _apiUrl = String.format("https://%1$s:4243/qps%2$s/ticket?xrfkey=%3$s", 
                 hostname, virtualProxyPrefix.isPresent() ? "/" + virtualProxyPrefix.get() : "", XRFKEY);
         _qlikCert = qlikCert;
+        _hostnameVerifier = hostnameVerifier;
+        _rateLimiter = rateLimiter;
+        _target = hostname.toLowerCase(Locale.ROOT) + virtualProxyPrefix.map(prefix -> "/" + prefix).orElse("");
     }
     
     /**
@@ -78,6 +122,7 @@ public class TicketRequest {
      * @return Ticket to claim within one minute.
      * @throws MalformedURLException
      * @throws IOException
+     * @throws RateLimitExceededException If the rate limiter rejected the request.
      * @throws KeyStoreException
      * @throws CertificateException
      * @throws NoSuchAlgorithmException
@@ -92,17 +137,20 @@ public class TicketRequest {
         var jsonRequestBody = String.format("{ 'UserId':'%1$s','UserDirectory':'%2$s','Attributes': [] }",
                 userId, userDirectory);
         var url = new URL(_apiUrl);
+        
+        if (_rateLimiter != null) {
+            _rateLimiter.await(_target, userDirectory);
+        }
+        
         var connection = (HttpsURLConnection) url.openConnection();
 
         /*
-           * When target hostname is not listed in server's certificate SAN field,
-           * use this as a whitelist for exceptions to continue. For example,
-           * hostname.equals("xx.xx.xx.xx" or "localhost") ? true : false
-           * See https://support.qlik.com/articles/000078616 for more info.
+         * When target hostname is not listed in server's certificate SAN field,
+         * the allowlist of this instance decides whether to continue. It is set
+         * on the connection only, so nothing changes for the rest of the JVM.
          */
-        HttpsURLConnection.setDefaultHostnameVerifier((String hostname, SSLSession session) -> true);
-
-        connection.setSSLSocketFactory(_qlikCert.getSSLContext().getSocketFactory());
+        connection.setHostnameVerifier(_hostnameVerifier);
+        connection.setSSLSocketFactory(getSocketFactory());
         connection.setDoOutput(true);
         connection.setDoInput(true);
         connection.setConnectTimeout(30000);
@@ -136,7 +184,9 @@ public class TicketRequest {
      * the {@link #getTicket(String, String) getTicket} function.
      * @param userDirectory Directory associated with user.
      * @param userId Login name of user.
-     * @return CompletableFuture with Ticket to claim within one minute.
+     * @return CompletableFuture with Ticket to claim within one minute, or completed
+     * exceptionally with a {@see RateLimitExceededException} if the rate limiter
+     * rejected the request.
      * @throws MalformedURLException
      * @throws IOException
      * @throws KeyStoreException
@@ -152,19 +202,7 @@ public class TicketRequest {
         
         var jsonRequestBody = String.format("{ 'UserId':'%1$s','UserDirectory':'%2$s','Attributes': [] }",
                 userId, userDirectory);
-        final Properties props = System.getProperties();
-        
-        /*
-         * Disables hostname validation when hostname is not listed in server's  
-         * certificate SAN field.
-         */    
-        props.setProperty("jdk.internal.httpclient.disableHostnameVerification", Boolean.TRUE.toString());
-
-        var client = HttpClient.newBuilder()
-            .connectTimeout(Duration.ofSeconds(30))
-            .followRedirects(Redirect.NORMAL)
-            .sslContext(_qlikCert.getSSLContext())
-            .build();
+        var client = getHttpClient();
         
         var request = HttpRequest.newBuilder()
             .uri(URI.create(_apiUrl))
@@ -175,7 +213,83 @@ public class TicketRequest {
             .POST(HttpRequest.BodyPublishers.ofString(jsonRequestBody))
             .build();
         
-        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
-                .thenApply(response -> response.body());
+        var turn = _rateLimiter == null ? CompletableFuture.<Void>completedFuture(null) 
+                : _rateLimiter.acquire(_target, userDirectory);
+        
+        var exchange = new AtomicReference<CompletableFuture<HttpResponse<String>>>();
+        var ticket = turn.thenCompose(ready -> {
+                    exchange.set(client.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+                    return exchange.get();
+                })
+                .thenApply(response -> {
+                    _negotiatedVersion = response.version();
+                    return response.body();
+                });
+        
+        // Cancelling the ticket also gives up its turn or aborts the exchange.
+        ticket.whenComplete((body, ex) -> {
+            if (ex instanceof CancellationException) {
+                turn.cancel(false);
+                Optional.ofNullable(exchange.get()).ifPresent(sent -> sent.cancel(true));
+            }
+        });
+        
+        return ticket;
+    }
+    
+    /**
+     * Gets the HTTP version used by the last asynchronous request, which is HTTP/2
+     * if the proxy negotiated it, and HTTP/1.1 otherwise.
+     * @return HTTP version, or empty if no asynchronous request has completed yet.
+     */
+    public Optional<Version> getNegotiatedVersion() {
+        return Optional.ofNullable(_negotiatedVersion);
+    }
+    
+    /**
+     * Gets the socket factory of this instance, which is created on first use and
+     * then reused, since {@see HttpsURLConnection} only reuses kept-alive 
+     * connections and TLS sessions for requests with the same factory.
+     * @return The socket factory for synchronous requests.
+     * @throws KeyStoreException
+     * @throws IOException
+     * @throws CertificateException
+     * @throws NoSuchAlgorithmException
+     * @throws UnrecoverableKeyException
+     * @throws KeyManagementException 
+     */
+    private synchronized SSLSocketFactory getSocketFactory() 
+            throws KeyStoreException, IOException, CertificateException, 
+                NoSuchAlgorithmException, UnrecoverableKeyException, KeyManagementException {
+        
+        if (_socketFactory == null) {
+            _socketFactory = _qlikCert.getSSLContext().getSocketFactory();
+        }
+        
+        return _socketFactory;
+    }
+    
+    /**
+     * Gets the HTTP client of this instance, which is shared with every instance
+     * using the same certificate, so concurrent requests share one HTTP/2 
+     * connection per proxy, or a pool of HTTP/1.1 connections if the proxy does
+     * not support HTTP/2.
+     * @return The HTTP client for asynchronous requests.
+     * @throws KeyStoreException
+     * @throws IOException
+     * @throws CertificateException
+     * @throws NoSuchAlgorithmException
+     * @throws UnrecoverableKeyException
+     * @throws KeyManagementException 
+     */
+    private synchronized HttpClient getHttpClient() 
+            throws KeyStoreException, IOException, CertificateException, 
+                NoSuchAlgorithmException, UnrecoverableKeyException, KeyManagementException {
+        
+        if (_httpClient == null) {
+            _httpClient = HttpClientPool.get(_qlikCert, _hostnameVerifier);
+        }
+        
+        return _httpClient;
     }
 }